@@ -20,45 +20,83 @@
 
 package org.viredero.viredroid;
 
+import android.graphics.Rect;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.util.Log;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 
 import java.lang.Runnable;
 import java.lang.InterruptedException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.FileInputStream;
-import java.io.BufferedInputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Future;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Inflater;
 
 public abstract class AbstractCmdPump implements Runnable {
 
-    private static final int VIREDERO_PROTO_VERSION = 1;
+    // 2: screen formats take 16 bits in init and init reply
+    private static final int VIREDERO_PROTO_VERSION = 2;
     private static final int SCREEN_FMT_RGB = 1;
     private static final int SCREEN_FMT_PNG = 2;
+    private static final int SCREEN_FMT_H264 = 4;
+    private static final int SCREEN_FMT_HEVC = 8;
+    private static final int SCREEN_FMT_DELTA = 16;
+    private static final int SCREEN_FMT_DEFLATE = 32;
+    private static final int SCREEN_FMT_JPEG = 64;
+    private static final int SCREEN_FMT_YUV = 128;
+    private static final int SCREEN_FMT_RGB565 = 256;
+    private static final int SCREEN_FMT_ETC2 = 512;
     private static final int POINTER_FMT_RGBA = 1; 
+    // host may name cursors by id, see PointerCmd
+    private static final int POINTER_FMT_CACHED = 2;
+    private static final int INIT_CMD_IDX = 0;
     private static final int INIT_REPLY_CMD_IDX = 1;
     private static final int IMAGE_CMD_IDX = 2;
+    private static final int POINTER_CMD_IDX = 3;
+    private static final int DISTANCE_CMD_IDX = 4;
+    private static final int MULTI_IMAGE_CMD_IDX = 5;
+    private static final int SCALED_IMAGE_CMD_IDX = 6;
+    // one slot per possible opcode byte, unknown opcodes stay null
+    private static final int MAX_CMDS = 256;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 10000;
+    private static final long DEFAULT_IDLE_CHECK_MS = 1000;
+    private static final int UPSTREAM_CAPACITY = 64;
+    // full-screen image buffers in flight between pump and GL thread
+    private static final int IMAGE_POOL_SIZE = 4;
 
-    private List<Command> commands;
-    private BlockingQueue<Update> queue;
-    private InputStream is;
+    private final Command[] commands = new Command[MAX_CMDS];
+    private UpdateQueue queue;
+    private volatile CmdReader reader;
+    private volatile UpstreamChannel upstream;
+    private int lastFrameCount;
+    private FlowControl flowControl;
+    private volatile long lastActivity;
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private long idleCheckMs = DEFAULT_IDLE_CHECK_MS;
     private int screenTexDataHandle;
     private int pointTexDataHandle;
     private ViredroidRenderer renderer;
     private int screenWidth;
     private int screenHeight;
+    private volatile BufferPool imagePool;
+    private VideoDecoder videoDecoder;
+    // read by flow control on whatever thread frees a buffer
+    private volatile BitmapDecoder bitmapDecoder;
+    private Inflater inflater;
+    private int screenTexFormat = GLES20.GL_RGB;
+    private int screenTexType = GLES20.GL_UNSIGNED_BYTE;
+    private boolean screenSwizzled = false;
+    private int chromaTexDataHandle = 0;
+    private boolean preferSoftwareDecoder = false;
+    // set if host may send scaled images, i.e. gaze is worth sending
+    private volatile Upscaler upscaler;
+    // last gaze sent, GL thread only
+    private int gazeX = -1;
+    private int gazeY = -1;
     
-    public AbstractCmdPump(BlockingQueue<Update> queue, ViredroidRenderer renderer
+    public AbstractCmdPump(UpdateQueue queue, ViredroidRenderer renderer
                            , int screenTexDataHandle, int pointTexDataHandle){
         this.queue = queue;
         this.renderer = renderer;
@@ -66,17 +104,17 @@ public abstract class AbstractCmdPump implements Runnable {
         this.pointTexDataHandle = pointTexDataHandle;
     }
 
-    public abstract InputStream createIS() throws IOException;
-    public abstract OutputStream createOS() throws IOException;
+    public abstract CmdReader createReader() throws IOException;
+    public abstract WritableByteChannel createOutChannel() throws IOException;
 
     private void initCommands() throws IOException {
-        commands = new ArrayList<Command>(4);
-        Command errCmd = new ErrorCmd();
-        commands.add(errCmd); // we send Init, not receive it
-        commands.add(new InitReplyCmd(this, is, screenTexDataHandle, pointTexDataHandle));
-        commands.add(new ImageSkipCmd(is));
-        commands.add(new PointerCmd(this, is, pointTexDataHandle));
-        commands.add(new DistanceCmd(is));
+        commands[INIT_CMD_IDX] = new ErrorCmd(); // we send Init, not receive it
+        commands[INIT_REPLY_CMD_IDX] = new InitReplyCmd(this, reader, screenTexDataHandle, pointTexDataHandle);
+        commands[IMAGE_CMD_IDX] = new ImageSkipCmd(reader);
+        commands[POINTER_CMD_IDX] = new PointerCmd(this, reader, renderer, pointTexDataHandle);
+        commands[DISTANCE_CMD_IDX] = new DistanceCmd(reader);
+        commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(reader);
+        commands[SCALED_IMAGE_CMD_IDX] = new ScaledImageCmd(reader);
     }
 
     @Override
@@ -102,53 +140,258 @@ public abstract class AbstractCmdPump implements Runnable {
 
     private void do_run() throws IOException{
         boolean initFinished = false;
-        ExecutorService execServ = Executors.newSingleThreadExecutor();
-        is = createIS();
-        is.skip(is.available()); //cleanup
+        reader = createReader();
         initPeer();
         initCommands();
-        while (! Thread.interrupted()) {
-            Callable<Integer> read = () -> {return is.read();};
-            Future<Integer> fRead = execServ.submit(read);
-            int code = 0;
-            boolean readSucceed = false;
-            try {
-                while (! readSucceed) {
-                    try {
-                        code = fRead.get(10, TimeUnit.SECONDS);
-                        readSucceed = true;
-                    } catch (TimeoutException te) {
-                        Log.w(ViredroidGLActivity.LOGTAG, "Long time since last command");
-                        queue.offer(new IndicateNoCmdUpdate(screenTexDataHandle, screenWidth, screenHeight));
-                        code = 0; // avoid compile error
-                    }
+        lastActivity = SystemClock.uptimeMillis();
+        lastFrameCount = renderer.getFrameCount();
+        flowControl = new FlowControl(this);
+        Thread watchdog = new Thread(
+            new IdleWatchdog(this, Thread.currentThread(), idleTimeoutMs, idleCheckMs)
+            , "viredroid-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                int code = reader.read();
+                lastActivity = SystemClock.uptimeMillis();
+                if (Log.isLoggable(ViredroidGLActivity.LOGTAG, Log.DEBUG)) {
+                    Log.d(ViredroidGLActivity.LOGTAG, String.format("Received command code %d", code));
+                }
+                if (code < 0) {
+                    throw new RuntimeException("Sudden end of stream!");
+                }
+                Command cmd = commands[code];
+                if (cmd == null) {
+                    throw new RuntimeException("Received unknown command " + code);
+                }
+                initFinished |= code == INIT_REPLY_CMD_IDX; // init is finished as soon as we got initReplyCmd
+                runCmd(cmd, initFinished);
+                if (initFinished) {
+                    repairDamage();
+                }
+                if (initFinished && (code == IMAGE_CMD_IDX || code == MULTI_IMAGE_CMD_IDX
+                                     || code == SCALED_IMAGE_CMD_IDX)) {
+                    flowControl.onImageReceived();
                 }
-            } catch (Exception e) {
-                Log.w(ViredroidGLActivity.LOGTAG, "Failed", e);
-                return;
             }
-            Log.d(ViredroidGLActivity.LOGTAG, String.format("Received command code %d", code));
-            if (code < 0 || code >= commands.size()) {
-                throw new RuntimeException("Received unknown command " + code);
+        } finally {
+            watchdog.interrupt();
+            upscaler = null;
+            if (upstream != null) {
+                upstream.close();
+                upstream = null;
             }
-            initFinished |= code == INIT_REPLY_CMD_IDX; // init is finished as soon as we got initReplyCmd
-            runCmd(commands.get(code), initFinished);
+            reader.close();
+            if (videoDecoder != null) {
+                videoDecoder.release();
+                renderer.setVideoMode(false);
+            }
+            if (bitmapDecoder != null) {
+                bitmapDecoder.release();
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+            if (chromaTexDataHandle != 0) {
+                renderer.setYuvMode(false);
+            }
+        }
+    }
+
+    // screen regions the queue dropped are redrawn from the delta shadow if
+    //   there is one, host is asked to send them again otherwise
+    private void repairDamage() throws IOException {
+        if (! queue.hasDamage() || queue.isFull()) {
+            return; // no use while GL thread is still behind
+        }
+        Rect d = queue.takeDamage(screenTexDataHandle);
+        if (chromaTexDataHandle != 0) {
+            Rect c = queue.takeDamage(chromaTexDataHandle);
+            if (c != null) {
+                // chroma plane has half the resolution of the screen
+                c.set(2 * c.left, 2 * c.top, 2 * c.right, 2 * c.bottom);
+                if (d == null) {
+                    d = c;
+                } else {
+                    d.union(c);
+                }
+            }
+        }
+        if (d == null) {
+            return;
+        }
+        Command cmd = commands[IMAGE_CMD_IDX];
+        if (cmd instanceof ImageDeltaCmd) {
+            queue.offer(((ImageDeltaCmd) cmd).getShadowUpdate(d.width(), d.height()
+                                                              , d.left, d.top));
+            return;
+        }
+        ByteBuffer repaint = ByteBuffer.allocate(16);
+        repaint.putInt(d.left);
+        repaint.putInt(d.top);
+        repaint.putInt(d.width());
+        repaint.putInt(d.height());
+        repaint.flip();
+        if (! sendUpstream(UpstreamChannel.REPAINT_MSG, repaint)) {
+            queue.addDamage(screenTexDataHandle, d); // next time then
         }
     }
 
     private void initPeer() throws IOException {
-        OutputStream os = createOS();
-        if (os == null) {
+        WritableByteChannel out = createOutChannel();
+        if (out == null) {
             Log.i(ViredroidGLActivity.LOGTAG
-                  , "Aborting peer initialization: output stream not created");
+                  , "Aborting peer initialization: output channel not created");
+            return;
+        }
+        ByteBuffer init = ByteBuffer.allocate(5);
+        init.put((byte)0); //init cmd code
+        init.put((byte)VIREDERO_PROTO_VERSION);
+        init.putShort((short)getScreenFormats());    // OR'ed screen image format constants
+        init.put((byte)(POINTER_FMT_RGBA | POINTER_FMT_CACHED));  // OR'ed pointer image format constants
+        init.flip();
+        while (init.hasRemaining()) {
+            out.write(init);
+        }
+        // output stays open for the rest of the session: reports and
+        //   flow control go there
+        UpstreamChannel u = new UpstreamChannel(out, UPSTREAM_CAPACITY);
+        u.start();
+        upstream = u;
+    }
+
+    /**
+     * Queues message for the host, never blocks. False if there is no
+     * upstream or it is congested.
+     */
+    public boolean sendUpstream(int opcode, ByteBuffer payload) {
+        UpstreamChannel u = upstream;
+        return u != null && u.send(opcode, payload);
+    }
+
+    /**
+     * Tells host how the client keeps up, see
+     * {@link UpstreamChannel#STATUS_MSG}. Watchdog thread only.
+     */
+    public void reportStatus() {
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            return; // init is not finished
+        }
+        int frames = renderer.getFrameCount();
+        BufferPool pool = imagePool;
+        ByteBuffer status = ByteBuffer.allocate(12);
+        status.putInt(frames - lastFrameCount);
+        status.putInt(queue.size());
+        status.putInt(pool != null ? pool.getInUse() : 0);
+        status.flip();
+        lastFrameCount = frames;
+        sendUpstream(UpstreamChannel.STATUS_MSG, status);
+        flowControl.grant(); // in case a grant was dropped by congested upstream
+    }
+
+    /**
+     * Tells host where on the screen user looks, see
+     * {@link UpstreamChannel#GAZE_MSG}. uv are screen texture coordinates,
+     * null if gaze misses the screen. Only sent if host may answer with
+     * scaled images and the point has moved. GL thread only.
+     */
+    public void sendGaze(float[] uv) {
+        if (upscaler == null) {
+            return;
+        }
+        int x = -1;
+        int y = -1;
+        if (uv != null) {
+            x = Math.min((int)(uv[0] * screenWidth), screenWidth - 1);
+            y = Math.min((int)(uv[1] * screenHeight), screenHeight - 1);
+        }
+        if (x == gazeX && y == gazeY) {
+            return;
+        }
+        ByteBuffer gaze = ByteBuffer.allocate(8);
+        gaze.putInt(x);
+        gaze.putInt(y);
+        gaze.flip();
+        if (sendUpstream(UpstreamChannel.GAZE_MSG, gaze)) {
+            gazeX = x;
+            gazeY = y;
+        }
+    }
+
+    private int getScreenFormats() {
+        int formats = SCREEN_FMT_RGB | SCREEN_FMT_PNG | SCREEN_FMT_DELTA
+            | SCREEN_FMT_DEFLATE | SCREEN_FMT_JPEG | SCREEN_FMT_YUV
+            | SCREEN_FMT_RGB565;
+        if (renderer.isGles3()) {
+            formats |= SCREEN_FMT_ETC2; // part of GLES 3.0
+        }
+        if (VideoDecoder.findDecoder(VideoDecoder.MIME_AVC, preferSoftwareDecoder) != null) {
+            formats |= SCREEN_FMT_H264;
+        }
+        if (VideoDecoder.findDecoder(VideoDecoder.MIME_HEVC, preferSoftwareDecoder) != null) {
+            formats |= SCREEN_FMT_HEVC;
+        }
+        return formats;
+    }
+
+    /**
+     * Decode video formats with software codec even if hardware one is
+     * there, e.g. to compare them. Takes effect on the next run.
+     */
+    public void setPreferSoftwareDecoder(boolean preferSoftwareDecoder) {
+        this.preferSoftwareDecoder = preferSoftwareDecoder;
+    }
+
+    /**
+     * Sets how long the peer may stay silent before it is indicated on the
+     * screen and how often the watchdog checks for it. Takes effect on the
+     * next run.
+     */
+    public void setIdleThresholds(long idleTimeoutMs, long idleCheckMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.idleCheckMs = idleCheckMs;
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void indicateIdle() {
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            return;
+        }
+        if (chromaTexDataHandle != 0) {
+            queue.offer(new IndicateNoCmdUpdate(screenTexDataHandle, chromaTexDataHandle
+                                                , screenWidth, screenHeight));
+        } else {
+            queue.offer(new IndicateNoCmdUpdate(screenTexDataHandle, screenWidth, screenHeight
+                                                , screenTexFormat, screenTexType
+                                                , screenSwizzled));
+        }
+    }
+
+    public void logStats() {
+        BufferPool pool = imagePool;
+        if (pool != null) {
+            Log.d(ViredroidGLActivity.LOGTAG, pool.toString());
+        }
+        Command cmd = commands[IMAGE_CMD_IDX];
+        if (cmd instanceof BaseImageCmd) {
+            Log.d(ViredroidGLActivity.LOGTAG, cmd.toString());
+        }
+    }
+
+    public void abort() {
+        CmdReader r = reader;
+        if (r == null) {
             return;
         }
-        os.write(0); //init cmd code
-        os.write(VIREDERO_PROTO_VERSION);
-        os.write(SCREEN_FMT_RGB | SCREEN_FMT_PNG);    // OR'ed screen image format constants
-        os.write(POINTER_FMT_RGBA);  // OR'ed pointer image format constants
-        os.flush();
-        os.close();
+        try {
+            r.close();
+        } catch (IOException e) {
+            Log.w(ViredroidGLActivity.LOGTAG, "Failed to close input", e);
+        }
     }
 
     public void setDimentions(int width, int height) {
@@ -157,14 +400,140 @@ public abstract class AbstractCmdPump implements Runnable {
         renderer.setDimentions(width, height);
     }
 
-    public void setScreenFormat(int fmt) {
+    public void setScreenFormat(int fmt) throws IOException {
+        int bufSize = 3 * screenWidth * screenHeight;
+        // pool bounding how many images the client may take in, image pool
+        //   unless it is a different one
+        BufferPool creditPool = null;
         if (fmt == SCREEN_FMT_RGB) {
             Log.i(ViredroidGLActivity.LOGTAG, "Will user RGB image format");
-            commands.set(IMAGE_CMD_IDX, new ImageRGBCmd(this, is, screenTexDataHandle));
+            // raw pixels may go straight to pixel buffer objects
+            imagePool = renderer.newUploadPool(IMAGE_POOL_SIZE, bufSize);
+            ImageRGBCmd cmd = new ImageRGBCmd(this, reader, screenTexDataHandle);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+            // areas away from the gaze may come in lower resolution
+            Upscaler u = renderer.getUpscaler();
+            if (u != null) {
+                commands[SCALED_IMAGE_CMD_IDX] = new ScaledImageCmd(this, reader, u
+                                                                    , screenTexDataHandle);
+                upscaler = u;
+            }
+        } else if (fmt == SCREEN_FMT_RGB565) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use RGB565 image format");
+            screenTexType = GLES20.GL_UNSIGNED_SHORT_5_6_5;
+            imagePool = renderer.newUploadPool(IMAGE_POOL_SIZE, 2 * screenWidth * screenHeight);
+            ImageRGB565Cmd cmd = new ImageRGB565Cmd(this, reader, screenTexDataHandle);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+        } else if (fmt == SCREEN_FMT_ETC2) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use ETC2 image format");
+            // blocks go to the texture as they are, nothing to decode
+            screenTexFormat = GLES30.GL_COMPRESSED_RGB8_ETC2;
+            imagePool = renderer.newUploadPool(IMAGE_POOL_SIZE
+                                               , ETC2ScreenUpdate.getByteCount(screenWidth, screenHeight));
+            ImageETC2Cmd cmd = new ImageETC2Cmd(this, reader, screenTexDataHandle);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
         } else if (fmt == SCREEN_FMT_PNG) {
             Log.i(ViredroidGLActivity.LOGTAG, "Will user PNG image format");
-            commands.set(IMAGE_CMD_IDX, new ImagePNGCmd(this, is, screenTexDataHandle));
+            // decoded pixels are uploaded as they are, the texture puts
+            //   channels in place when it can
+            setBitmapFormat(renderer.isGles3(), ! renderer.isGles3());
+        } else if (fmt == SCREEN_FMT_JPEG) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use JPEG image format");
+            setBitmapFormat(false, false);
+        } else if (fmt == SCREEN_FMT_DELTA) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use delta image format");
+            // delta is decoded right away, a single buffer will do; peer
+            //   keeps runs within twice the raw size
+            imagePool = new BufferPool(1, 2 * bufSize);
+            creditPool = renderer.newUploadPool(IMAGE_POOL_SIZE, bufSize);
+            ImageDeltaCmd cmd = new ImageDeltaCmd(this, reader, screenTexDataHandle
+                                                  , creditPool);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+        } else if (fmt == SCREEN_FMT_DEFLATE) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use deflate image format");
+            // inflated right away; stored blocks may grow incompressible
+            //   pixels a bit
+            imagePool = new BufferPool(1, bufSize + bufSize / 1000 + 64);
+            inflater = new Inflater();
+            // inflater needs arrays, so no pixel buffer objects here
+            creditPool = new BufferPool(IMAGE_POOL_SIZE, bufSize);
+            ImageDeflateCmd cmd = new ImageDeflateCmd(this, reader, screenTexDataHandle
+                                                      , creditPool, inflater);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+        } else if (fmt == SCREEN_FMT_YUV) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use YUV image format");
+            if (((screenWidth | screenHeight) & 1) != 0) {
+                throw new RuntimeException("YUV format needs even screen dimentions");
+            }
+            // luma goes to the screen texture, conversion is up to the shader
+            screenTexFormat = GLES20.GL_LUMINANCE;
+            chromaTexDataHandle = renderer.getChromaTexDataHandle();
+            imagePool = renderer.newUploadPool(IMAGE_POOL_SIZE, screenWidth * screenHeight * 3 / 2);
+            ImageYUVCmd cmd = new ImageYUVCmd(this, reader, screenTexDataHandle
+                                              , chromaTexDataHandle);
+            commands[IMAGE_CMD_IDX] = cmd;
+            commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+            renderer.setYuvMode(true);
+        } else if (fmt == SCREEN_FMT_H264 || fmt == SCREEN_FMT_HEVC) {
+            String mime = fmt == SCREEN_FMT_H264 ? VideoDecoder.MIME_AVC : VideoDecoder.MIME_HEVC;
+            Log.i(ViredroidGLActivity.LOGTAG, "Will use " + mime + " video format");
+            videoDecoder = new VideoDecoder(mime, screenWidth, screenHeight
+                                            , renderer.getVideoSurfaceTexture()
+                                            , preferSoftwareDecoder);
+            renderer.setVideoMode(true);
+            commands[IMAGE_CMD_IDX] = new VideoCmd(reader, videoDecoder);
         }
+        // video has no pool, the decoder holds the pump up instead
+        flowControl.start(creditPool != null ? creditPool : imagePool);
+    }
+
+    public int getScreenTexFormat() {
+        return screenTexFormat;
+    }
+
+    /**
+     * Texture for chroma of yuv screen, 0 in other formats.
+     */
+    public int getChromaTexDataHandle() {
+        return chromaTexDataHandle;
+    }
+
+    public int getScreenTexType() {
+        return screenTexType;
+    }
+
+    public boolean isScreenSwizzled() {
+        return screenSwizzled;
+    }
+
+    private void setBitmapFormat(boolean swizzled, boolean cpuSwizzle) {
+        screenTexFormat = GLES20.GL_RGBA;
+        screenSwizzled = swizzled;
+        bitmapDecoder = new BitmapDecoder(queue, screenTexDataHandle, screenWidth
+                                          , screenHeight, cpuSwizzle);
+        imagePool = new BufferPool(bitmapDecoder.getCapacity(), 3 * screenWidth * screenHeight);
+        ImageBitmapCmd cmd = new ImageBitmapCmd(this, reader, screenTexDataHandle
+                                                , bitmapDecoder);
+        commands[IMAGE_CMD_IDX] = cmd;
+        commands[MULTI_IMAGE_CMD_IDX] = new MultiImageCmd(this, reader, cmd);
+    }
+
+    /**
+     * Images taken in but not on the screen yet: updates waiting for
+     * upload and images still being decoded.
+     */
+    public int getPendingCount() {
+        BitmapDecoder d = bitmapDecoder;
+        return queue.size() + (d != null ? d.getInFlight() : 0);
+    }
+
+    public BufferPool getImagePool() {
+        return imagePool;
     }
 
     public int getWidth() {
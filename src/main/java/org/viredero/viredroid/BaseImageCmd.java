@@ -24,38 +24,35 @@ import android.opengl.GLES20;
 import android.util.Log;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.DataInputStream;
 import java.nio.ByteBuffer;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
 public abstract class BaseImageCmd implements Command {
 
-    private static final int QUEUE_SIZE = 2;
+    // width, height, x offset, y offset and image size, all int32
+    private static final int HEADER_SIZE = 20;
 
     private int screenTexDataHandle;
-    private DataInputStream dis;
+    private CmdReader reader;
     private AbstractCmdPump cmdPump;
-    // this queue is required as bytebuffer is shared between this (pump) thread
-    //   and gui (viredroidrenderer) thread. Even though pump is much slower then rendering...
-    private Queue<ByteBuffer> bufQueue;
-    
-    protected BaseImageCmd(InputStream s) {
-        this.dis = new DataInputStream(s);
+    // buffers are shared between this (pump) thread and gui (viredroidrenderer)
+    //   thread, the latter releases them back to the pool after upload
+    private BufferPool pool;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    // written by pump thread, read for stats by watchdog
+    private volatile long imageCount;
+    private volatile long imageBytes;
+    private volatile long pumpNanos;
+
+    protected BaseImageCmd(CmdReader reader) {
+        this.reader = reader;
     }
 
-    public BaseImageCmd(AbstractCmdPump cmdPump, InputStream s
+    public BaseImageCmd(AbstractCmdPump cmdPump, CmdReader reader
                     , int screenTexDataHandle) {
         this.cmdPump = cmdPump;
-        this.dis = new DataInputStream(s);
+        this.reader = reader;
         this.screenTexDataHandle = screenTexDataHandle;
-        bufQueue = new LinkedList<ByteBuffer>();
-        int size = 3 * cmdPump.getWidth() * cmdPump.getHeight();
-        for (int i = 0; i < QUEUE_SIZE; i += 1) {
-            bufQueue.add(ByteBuffer.allocateDirect(size));
-        }
+        this.pool = cmdPump.getImagePool();
     }
 
     public int getScreenTexDataHandle() {
@@ -63,42 +60,116 @@ public abstract class BaseImageCmd implements Command {
     }
 
     protected abstract Update getScreenUpdate(int width, int height, int xOffset
-                                              , int yOffset, ByteBuffer imageBuf);
+                                              , int yOffset, PooledBuffer imageBuf)
+        throws IOException;
+
+    /**
+     * Single update for count images laid one after another in imageBuf.
+     * rects holds width, height, x offset, y offset and size of each one.
+     * Formats uploaded as they are received get every image sliced out
+     * of imageBuf, see {@link #getRectUpdate}; others decode them here.
+     */
+    protected Update getScreenUpdates(int[] rects, int count
+                                      , PooledBuffer imageBuf) throws IOException {
+        try {
+            for (int r = 0; r < 5 * count; r += 5) {
+                checkRect(rects[r], rects[r + 1], rects[r + 2], rects[r + 3], rects[r + 4]);
+            }
+        } catch (RuntimeException e) {
+            imageBuf.release();
+            throw e;
+        }
+        Update[] updates = new Update[count];
+        int offset = 0;
+        for (int i = 0; i < count; i += 1) {
+            int r = 5 * i;
+            updates[i] = getRectUpdate(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]
+                                       , imageBuf.retain(), offset);
+            offset += rects[r + 4];
+        }
+        imageBuf.release(); // updates hold their own references
+        return new MultiUpdate(updates);
+    }
+
+    /**
+     * Update for the image at offset of imageBuf, taking over the
+     * reference given. Only for formats uploaded as they are received.
+     */
+    protected Update getRectUpdate(int width, int height, int xOffset, int yOffset
+                                   , PooledBuffer imageBuf, int offset) {
+        throw new RuntimeException(getClass().getSimpleName() + " images can't be sliced");
+    }
+
+    /**
+     * Throws if an image of size bytes can't be uploaded to the rectangle.
+     */
+    protected void checkRect(int width, int height, int xOffset, int yOffset
+                             , int size) {
+    }
     
     @Override
     public Update exec() throws IOException {
-        int width = dis.readInt();
-        int height = dis.readInt();
-        int xOffset = dis.readInt();
-        int yOffset = dis.readInt();
-        int imageSize = dis.readInt();
+        header.clear();
+        reader.readFully(header);
+        int width = header.getInt(0);
+        int height = header.getInt(4);
+        int xOffset = header.getInt(8);
+        int yOffset = header.getInt(12);
+        int imageSize = header.getInt(16);
         if (imageSize <= 0) {
             throw new RuntimeException("image size <= 0");
         }
-        ByteBuffer imageBuf = bufQueue.poll();
-        byte[] buf = imageBuf.array();
-        int totalRead = 0;
-        while (imageSize > 0) {
-            int read = dis.read(buf, totalRead, imageSize);
-            if (read < 0) {
-                throw new RuntimeException("Sudden end of stream!");
-            }
-            imageSize -= read;
-            totalRead += read;
+        if (imageSize > pool.getBufferSize()) {
+            throw new RuntimeException("image size exceeds screen size");
         }
-        imageBuf.limit(totalRead);
-        bufQueue.offer(imageBuf);
-        return getScreenUpdate(width, height, xOffset
-                               , yOffset, imageBuf);
+        PooledBuffer pooled = pool.acquire();
+        ByteBuffer imageBuf = pooled.getBuffer();
+        imageBuf.limit(imageSize);
+        try {
+            reader.readFully(imageBuf);
+        } catch (IOException e) {
+            pooled.release();
+            throw e;
+        }
+        imageBuf.flip();
+        long start = System.nanoTime();
+        Update u = getScreenUpdate(width, height, xOffset
+                                   , yOffset, pooled);
+        countDecoded(1, imageSize, start);
+        return u;
+    }
+
+    Update getTimedScreenUpdates(int[] rects, int count, PooledBuffer imageBuf
+                                 , int size) throws IOException {
+        long start = System.nanoTime();
+        Update u = getScreenUpdates(rects, count, imageBuf);
+        countDecoded(count, size, start);
+        return u;
+    }
+
+    private void countDecoded(int count, int size, long start) {
+        pumpNanos += System.nanoTime() - start;
+        imageCount += count;
+        imageBytes += size;
+    }
+
+    /**
+     * Time pump thread spent turning received images into updates, to
+     * compare screen formats. Formats decoded off the pump thread add the
+     * time spent there.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d images, %d KB received, %d ms on pump thread"
+                             , getClass().getSimpleName(), imageCount
+                             , imageBytes / 1024, pumpNanos / 1000000);
     }
 
     @Override
     public void skip() throws IOException {
-        int width = dis.readInt();
-        int height = dis.readInt();
-        dis.skipBytes(8); // x and y offsets
-        int imageSize = dis.readInt();
-        dis.skipBytes(imageSize);
+        header.clear();
+        reader.readFully(header);
+        reader.skip(header.getInt(16));
     }
 
 }
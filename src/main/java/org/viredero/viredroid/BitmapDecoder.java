@@ -0,0 +1,293 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes png or jpeg images on a pool of worker threads and hands resulting
+ * updates to the queue in the order they were submitted.
+ */
+public class BitmapDecoder implements Runnable {
+
+    private static final int MAX_WORKERS = 4;
+    // the pump and the gl thread need a core of their own
+    private static final int RESERVED_CORES = 2;
+
+    private final UpdateQueue queue;
+    private final int texId;
+    private final boolean swizzle;
+    private final int workerCount;
+    private final ExecutorService workers;
+    // decodes not yet handed to the queue, in submission order
+    private final BlockingQueue<Future<Update>> inFlight;
+    private final BufferPool pixelPool;
+    private final Thread presenter;
+    // summed over workers, for stats
+    private final AtomicLong decodeNanos = new AtomicLong();
+    // every worker keeps decoding into the same bitmap
+    private final ThreadLocal<BitmapFactory.Options> options
+        = new ThreadLocal<BitmapFactory.Options>() {
+            @Override
+            protected BitmapFactory.Options initialValue() {
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inMutable = true;
+                opts.inPremultiplied = false;
+                opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+                return opts;
+            }
+        };
+
+    /**
+     * @param swizzle rotate color channels on cpu, for when texture can't
+     *   do it (no GLES 3.0)
+     */
+    public BitmapDecoder(UpdateQueue queue, int texId, int width, int height
+                      , boolean swizzle) {
+        this.queue = queue;
+        this.texId = texId;
+        this.swizzle = swizzle;
+        int cores = Runtime.getRuntime().availableProcessors();
+        workerCount = Math.max(1, Math.min(MAX_WORKERS, cores - RESERVED_CORES));
+        workers = Executors.newFixedThreadPool(workerCount);
+        inFlight = new ArrayBlockingQueue<>(workerCount + 1);
+        // every decode not yet presented may hold a buffer, plus the one
+        //   presenter waits for: with fewer the oldest decode could starve
+        pixelPool = new BufferPool(workerCount + 2, 4 * width * height);
+        presenter = new Thread(this, "viredroid-bitmap");
+        presenter.setDaemon(true);
+        presenter.start();
+        Log.i(ViredroidGLActivity.LOGTAG, "Decoding images on " + workerCount + " threads");
+    }
+
+    /**
+     * Number of compressed images that may be in flight at once, size the
+     * pool feeding this decoder accordingly.
+     */
+    public int getCapacity() {
+        return workerCount + 2;
+    }
+
+    /**
+     * Images submitted but not yet handed to the queue.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Queues image for decoding, blocks while too many are in flight. Takes
+     * over the reference to image.
+     */
+    public void submit(final int width, final int height, final int xOffset
+                       , final int yOffset, final PooledBuffer image)
+        throws InterruptedIOException {
+        submit(new Callable<Update>() {
+                @Override
+                public Update call() throws Exception {
+                    return decode(width, height, xOffset, yOffset, image);
+                }
+            });
+    }
+
+    /**
+     * Queues count images laid one after another in image for decoding into
+     * a single update, see {@link BaseImageCmd#getScreenUpdates}.
+     */
+    public void submit(int[] rects, final int count, final PooledBuffer image)
+        throws InterruptedIOException {
+        final int[] r = Arrays.copyOf(rects, 5 * count);
+        submit(new Callable<Update>() {
+                @Override
+                public Update call() throws Exception {
+                    return decode(r, count, image);
+                }
+            });
+    }
+
+    private void submit(Callable<Update> task) throws InterruptedIOException {
+        Future<Update> f = workers.submit(task);
+        try {
+            inFlight.put(f);
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while submitting image");
+        }
+    }
+
+    private Update decode(int width, int height, int xOffset, int yOffset
+                          , PooledBuffer pooled) throws InterruptedIOException {
+        long startNanos = System.nanoTime();
+        Bitmap b;
+        try {
+            ByteBuffer image = pooled.getBuffer();
+            // array of a direct buffer need not start where its memory does
+            b = decodeBitmap(image.array(), image.arrayOffset() + image.position()
+                             , image.remaining(), width, height);
+        } finally {
+            pooled.release();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        PooledBuffer pixels = pixelPool.acquire();
+        startNanos = System.nanoTime();
+        ByteBuffer out = pixels.getBuffer();
+        out.clear();
+        b.copyPixelsToBuffer(out);
+        out.flip();
+        if (swizzle) {
+            swizzle(out.array(), out.arrayOffset(), out.arrayOffset() + out.limit());
+        }
+        decodeNanos.addAndGet(nanos + System.nanoTime() - startNanos);
+        return new BitmapScreenUpdate(texId, b.getWidth(), b.getHeight()
+                                   , xOffset, yOffset, pixels);
+    }
+
+    private Update decode(int[] rects, int count, PooledBuffer pooled)
+        throws InterruptedIOException {
+        Update[] updates = new Update[count];
+        PooledBuffer pixels = null;
+        long startNanos;
+        try {
+            pixels = pixelPool.acquire();
+            startNanos = System.nanoTime();
+            ByteBuffer out = pixels.getBuffer();
+            out.clear();
+            ByteBuffer in = pooled.getBuffer();
+            byte[] image = in.array();
+            int offset = in.arrayOffset() + in.position();
+            for (int i = 0; i < count; i += 1) {
+                int r = 5 * i;
+                Bitmap b = decodeBitmap(image, offset, rects[r + 4], rects[r], rects[r + 1]);
+                offset += rects[r + 4];
+                if (b.getByteCount() > out.remaining()) {
+                    throw new RuntimeException("Decoded images exceed screen size");
+                }
+                int start = out.position();
+                b.copyPixelsToBuffer(out);
+                if (swizzle) {
+                    swizzle(out.array(), out.arrayOffset() + start
+                            , out.arrayOffset() + out.position());
+                }
+                updates[i] = new BitmapScreenUpdate(texId, b.getWidth(), b.getHeight()
+                                                 , rects[r + 2], rects[r + 3]
+                                                 , pixels.retain(), start);
+            }
+        } catch (RuntimeException e) {
+            for (Update u : updates) {
+                if (u != null) {
+                    u.release();
+                }
+            }
+            throw e;
+        } finally {
+            pooled.release();
+            if (pixels != null) {
+                pixels.release(); // updates hold their own references
+            }
+        }
+        decodeNanos.addAndGet(System.nanoTime() - startNanos);
+        return new MultiUpdate(updates);
+    }
+
+    /**
+     * Time workers spent decoding so far, waits for pixel buffers aside.
+     */
+    public long getDecodeNanos() {
+        return decodeNanos.get();
+    }
+
+    private Bitmap decodeBitmap(byte[] image, int offset, int length
+                                , int width, int height) {
+        BitmapFactory.Options opts = options.get();
+        Bitmap reuse = opts.inBitmap;
+        if (reuse == null || reuse.getAllocationByteCount() < 4 * width * height) {
+            if (reuse != null) {
+                reuse.recycle();
+            }
+            opts.inBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        Bitmap b;
+        try {
+            b = BitmapFactory.decodeByteArray(image, offset, length, opts);
+        } catch (IllegalArgumentException e) {
+            // image doesn't fit into the bitmap after all (header lied)
+            opts.inBitmap.recycle();
+            opts.inBitmap = null;
+            b = BitmapFactory.decodeByteArray(image, offset, length, opts);
+        }
+        if (b == null) {
+            throw new RuntimeException("Failed to decode image");
+        }
+        opts.inBitmap = b;
+        return b;
+    }
+
+    // same channel order as the screen texture swizzle in SetupScreen
+    private static void swizzle(byte[] a, int from, int to) {
+        for (int i = from; i < to; i += 4) {
+            byte r = a[i];
+            a[i] = a[i + 2];
+            a[i + 2] = a[i + 1];
+            a[i + 1] = r;
+            a[i + 3] = (byte)0xFF;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                Future<Update> f = inFlight.take();
+                try {
+                    queue.offer(f.get());
+                } catch (ExecutionException e) {
+                    Log.w(ViredroidGLActivity.LOGTAG, "Dropping image update", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            // released
+        }
+    }
+
+    public void release() {
+        presenter.interrupt();
+        workers.shutdownNow();
+        for (Future<Update> f : inFlight) {
+            f.cancel(true);
+        }
+        inFlight.clear();
+    }
+}
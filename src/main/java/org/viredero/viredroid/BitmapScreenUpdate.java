@@ -20,20 +20,19 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import android.util.Log;
+import android.opengl.GLES20;
 
-public class ImagePNGCmd extends BaseImageCmd {
+// pixels decoded by BitmapDecoder, straight as they came out of the bitmap
+public class BitmapScreenUpdate extends SubImageUpdate {
 
-    public ImagePNGCmd(AbstractCmdPump cmdPump, InputStream s
-                       , int screenTexDataHandle) {
-        super(cmdPump, s, screenTexDataHandle);
+    public BitmapScreenUpdate(int texId, int width, int height, int xOffset
+                           , int yOffset, PooledBuffer pixels) {
+        super(texId, GLES20.GL_RGBA, width, height, xOffset, yOffset, pixels);
     }
 
-    public Update getScreenUpdate(int width, int height
-                                  , int xOffset, int yOffset
-                                  , ByteBuffer imageBuf) {
-        return new PNGScreenUpdate(getScreenTexDataHandle(), width, height, xOffset, yOffset, imageBuf);
+    public BitmapScreenUpdate(int texId, int width, int height, int xOffset
+                           , int yOffset, PooledBuffer pixels, int offset) {
+        super(texId, GLES20.GL_RGBA, width, height, xOffset, yOffset, pixels, offset);
     }
+
 }
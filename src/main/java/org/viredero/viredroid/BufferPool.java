@@ -0,0 +1,136 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed set of equally sized direct buffers shared by the pump, which
+ * fills them, and the GL thread, which releases them once uploaded. When
+ * every buffer is in flight the pump waits for one, which in turn
+ * stalls the peer instead of overwriting pixels not yet uploaded.
+ */
+public class BufferPool {
+
+    private final BlockingQueue<PooledBuffer> free;
+    private final int size;
+    private final int bufferSize;
+    private volatile Runnable recycleListener;
+
+    // written by the acquiring (pump) thread only
+    private volatile long acquireCount;
+    private volatile long waitCount;
+    private volatile long waitNanos;
+    private volatile long maxWaitNanos;
+
+    public BufferPool(int size, int bufferSize) {
+        this(size, bufferSize, true);
+    }
+
+    protected BufferPool(int size, int bufferSize, boolean allocate) {
+        this.size = size;
+        this.bufferSize = bufferSize;
+        free = new ArrayBlockingQueue<PooledBuffer>(size);
+        for (int i = 0; allocate && i < size; i += 1) {
+            free.add(new PooledBuffer(this, ByteBuffer.allocateDirect(bufferSize)));
+        }
+    }
+
+    public PooledBuffer acquire() throws InterruptedIOException {
+        acquireCount += 1;
+        PooledBuffer buf = free.poll();
+        if (buf == null) {
+            long start = System.nanoTime();
+            try {
+                buf = free.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a buffer");
+            }
+            long waited = System.nanoTime() - start;
+            waitCount += 1;
+            waitNanos += waited;
+            if (waited > maxWaitNanos) {
+                maxWaitNanos = waited;
+            }
+        }
+        buf.acquired();
+        return buf;
+    }
+
+    void recycle(PooledBuffer buf) {
+        free.offer(buf);
+        Runnable l = recycleListener;
+        if (l != null) {
+            l.run();
+        }
+    }
+
+    /**
+     * Runs listener on whatever thread frees a buffer, right after it
+     * becomes available.
+     */
+    public void setRecycleListener(Runnable listener) {
+        this.recycleListener = listener;
+    }
+
+    public int getFree() {
+        return free.size();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getInUse() {
+        return size - free.size();
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    public long getWaitMillis() {
+        return waitNanos / 1000000;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitNanos / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool %d/%d in use, %d acquired, %d waited %d ms (max %d ms)"
+                             , getInUse(), size, acquireCount, waitCount
+                             , getWaitMillis(), getMaxWaitMillis());
+    }
+}
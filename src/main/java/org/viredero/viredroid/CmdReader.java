@@ -0,0 +1,119 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads commands from a channel. Small reads (opcodes, headers, tails of
+ * images) are served from a direct read-ahead buffer, whole multiples of
+ * the read-ahead size go straight from the channel into the destination.
+ * So every read issued to the channel is a multiple of the read-ahead size
+ * (USB accessory loses data otherwise) and every byte is copied at most
+ * once after the kernel.
+ */
+public class CmdReader implements Closeable {
+
+    private final ReadableByteChannel ch;
+    // bytes read ahead are kept between position and limit
+    private final ByteBuffer readAhead;
+
+    public CmdReader(ReadableByteChannel ch, int readAheadSize) {
+        this.ch = ch;
+        this.readAhead = ByteBuffer.allocateDirect(readAheadSize);
+        readAhead.limit(0);
+    }
+
+    /**
+     * Reads one byte, returns -1 at the end of stream.
+     */
+    public int read() throws IOException {
+        if (! readAhead.hasRemaining() && ! fill()) {
+            return -1;
+        }
+        return readAhead.get() & 0xFF;
+    }
+
+    /**
+     * Reads exactly dst.remaining() bytes into dst.
+     */
+    public void readFully(ByteBuffer dst) throws IOException {
+        drainTo(dst);
+        while (dst.hasRemaining()) {
+            int direct = dst.remaining() - dst.remaining() % readAhead.capacity();
+            if (direct > 0) {
+                int limit = dst.limit();
+                dst.limit(dst.position() + direct);
+                int read = ch.read(dst);
+                dst.limit(limit);
+                if (read < 0) {
+                    throw new EOFException("Sudden end of stream!");
+                }
+            } else {
+                if (! fill()) {
+                    throw new EOFException("Sudden end of stream!");
+                }
+                drainTo(dst);
+            }
+        }
+    }
+
+    public void skip(long count) throws IOException {
+        while (count > 0) {
+            if (! readAhead.hasRemaining() && ! fill()) {
+                throw new EOFException("Sudden end of stream!");
+            }
+            int n = (int) Math.min(count, readAhead.remaining());
+            readAhead.position(readAhead.position() + n);
+            count -= n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    private void drainTo(ByteBuffer dst) {
+        int n = Math.min(readAhead.remaining(), dst.remaining());
+        if (n == 0) {
+            return;
+        }
+        int limit = readAhead.limit();
+        readAhead.limit(readAhead.position() + n);
+        dst.put(readAhead);
+        readAhead.limit(limit);
+    }
+
+    private boolean fill() throws IOException {
+        readAhead.clear();
+        int read = 0;
+        while (read == 0) {
+            read = ch.read(readAhead);
+        }
+        readAhead.flip();
+        return read > 0;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Which cursor shapes, named by host given ids, live in which slots of the
+ * cursor atlas. The least recently used shape gives its slot up to a new
+ * one. Pump thread only; slots are filled on GL thread in queue order, so
+ * updates using a slot always find the shape that was there when they
+ * were made.
+ */
+public class CursorCache {
+
+    public static final int ATLAS_SIZE = 256;
+    public static final int SLOT_SIZE = 64;
+    private static final int SLOTS_PER_ROW = ATLAS_SIZE / SLOT_SIZE;
+    private static final int SLOTS = SLOTS_PER_ROW * SLOTS_PER_ROW;
+
+    public static class Shape {
+        private final int slot;
+        private final int width;
+        private final int height;
+
+        private Shape(int slot, int width, int height) {
+            this.slot = slot;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getX() {
+            return (slot % SLOTS_PER_ROW) * SLOT_SIZE;
+        }
+
+        public int getY() {
+            return (slot / SLOTS_PER_ROW) * SLOT_SIZE;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    // in access order, eldest first
+    private final Map<Integer, Shape> shapes = new LinkedHashMap<>(SLOTS, .75f, true);
+    // slots some shape is in
+    private final BitSet taken = new BitSet(SLOTS);
+
+    public static boolean fits(int width, int height) {
+        return width <= SLOT_SIZE && height <= SLOT_SIZE;
+    }
+
+    /**
+     * Shape known by id, null if there is none (any more).
+     */
+    public Shape get(int id) {
+        return shapes.get(id);
+    }
+
+    /**
+     * Takes a slot for a new shape, evicting the least recently used one
+     * if the atlas is full. Shape must fit a slot.
+     */
+    public Shape put(int id, int width, int height) {
+        if (! fits(width, height)) {
+            throw new RuntimeException("Cursor doesn't fit atlas slot: " + width + "x" + height);
+        }
+        Shape old = shapes.remove(id);
+        int slot;
+        if (old != null) {
+            slot = old.slot;
+        } else if (shapes.size() < SLOTS) {
+            slot = taken.nextClearBit(0);
+        } else {
+            Iterator<Shape> eldest = shapes.values().iterator();
+            slot = eldest.next().slot;
+            eldest.remove();
+        }
+        taken.set(slot);
+        Shape shape = new Shape(slot, width, height);
+        shapes.put(id, shape);
+        return shape;
+    }
+
+    /**
+     * Forgets shape known by id, if any, e.g. once host gave that id to a
+     * shape that can't be cached.
+     */
+    public void remove(int id) {
+        Shape old = shapes.remove(id);
+        if (old != null) {
+            taken.clear(old.slot);
+        }
+    }
+}
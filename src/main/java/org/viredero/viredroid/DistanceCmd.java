@@ -20,15 +20,14 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
 import java.io.IOException;
 
 public class DistanceCmd implements Command {
 
-    private InputStream is;
+    private CmdReader reader;
     
-    public DistanceCmd(InputStream is) {
-        this.is = is;
+    public DistanceCmd(CmdReader reader) {
+        this.reader = reader;
     }
 
     @Override
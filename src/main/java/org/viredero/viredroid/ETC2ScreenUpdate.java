@@ -0,0 +1,71 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.nio.ByteBuffer;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+// ETC2 blocks of 4x4 pixels, uploaded as they are
+public class ETC2ScreenUpdate extends SubImageUpdate {
+
+    public static final int BLOCK_SIZE = 8;
+
+    public ETC2ScreenUpdate(int texId, int width, int height, int xOffset
+                            , int yOffset, PooledBuffer blocks, int offset) {
+        super(texId, GLES30.GL_COMPRESSED_RGB8_ETC2, GLES20.GL_UNSIGNED_BYTE, width, height
+              , xOffset, yOffset, blocks, offset);
+    }
+
+    public ETC2ScreenUpdate(int texId, int width, int height, int xOffset
+                            , int yOffset, ByteBuffer blocks) {
+        super(texId, GLES30.GL_COMPRESSED_RGB8_ETC2, width, height, xOffset
+              , yOffset, blocks);
+    }
+
+    /**
+     * Size of width x height pixels in blocks, partial ones included.
+     */
+    public static int getByteCount(int width, int height) {
+        return BLOCK_SIZE * ((width + 3) / 4) * ((height + 3) / 4);
+    }
+
+    @Override
+    public int getByteCount() {
+        return getByteCount(getWidth(), getHeight());
+    }
+
+    @Override
+    protected void upload(int pboOffset) {
+        GLES30.glCompressedTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, getX(), getY()
+                                         , getWidth(), getHeight()
+                                         , GLES30.GL_COMPRESSED_RGB8_ETC2
+                                         , getByteCount(), pboOffset);
+    }
+
+    @Override
+    protected void upload(ByteBuffer bytes) {
+        GLES20.glCompressedTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, getX(), getY()
+                                         , getWidth(), getHeight()
+                                         , GLES30.GL_COMPRESSED_RGB8_ETC2
+                                         , getByteCount(), bytes);
+    }
+}
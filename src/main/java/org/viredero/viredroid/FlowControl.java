@@ -0,0 +1,102 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Credit based flow control: host sends an image command only while it
+ * holds a credit and spends one on each. Credits are granted as buffers
+ * for incoming images get free and fewer images wait for decode or
+ * upload, so frames don't pile up in kernel and USB buffers, nor in
+ * queues, while the client catches up.
+ */
+public class FlowControl implements Runnable {
+
+    // credits kept granted when there's no pool to go by (video)
+    private static final int WINDOW = 8;
+
+    private final AbstractCmdPump cmdPump;
+    private final ByteBuffer credit = ByteBuffer.allocate(4);
+    private BufferPool pool;
+    private boolean started;
+    private long granted;
+    private long received;
+
+    public FlowControl(AbstractCmdPump cmdPump) {
+        this.cmdPump = cmdPump;
+    }
+
+    /**
+     * Grants first credits, more follow as buffers of pool are freed.
+     * Pool may be null, then a fixed window is kept.
+     */
+    public synchronized void start(BufferPool pool) {
+        this.pool = pool;
+        if (pool != null) {
+            pool.setRecycleListener(this);
+        }
+        started = true;
+        grant();
+    }
+
+    /**
+     * Pump thread, after an image command is taken in.
+     */
+    public synchronized void onImageReceived() {
+        received += 1;
+        grant();
+    }
+
+    // buffer freed
+    @Override
+    public void run() {
+        grant();
+    }
+
+    /**
+     * Tops credits up to what can be taken in right now: a free buffer
+     * for every image host may still send, less images still waiting to
+     * be decoded or uploaded.
+     */
+    public synchronized void grant() {
+        if (! started) {
+            return;
+        }
+        long target = (pool != null ? pool.getFree() : WINDOW) - cmdPump.getPendingCount();
+        long outstanding = granted - received;
+        if (outstanding < 0) {
+            // host doesn't keep to credits, don't let that pile up grants
+            received = granted;
+            outstanding = 0;
+        }
+        if (target <= outstanding) {
+            return;
+        }
+        int n = (int)(target - outstanding);
+        credit.clear();
+        credit.putInt(n);
+        credit.flip();
+        if (cmdPump.sendUpstream(UpstreamChannel.CREDIT_MSG, credit)) {
+            granted += n;
+        }
+    }
+}
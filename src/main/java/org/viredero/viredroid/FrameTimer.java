@@ -0,0 +1,109 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * How long frames take: GPU time by EXT_disjoint_timer_query if the
+ * extension is there, time between frames on CPU otherwise. Queries are
+ * read a few frames late, so GPU is never waited for. GL thread only.
+ */
+public class FrameTimer {
+
+    private static final String TIMER_QUERY_EXT = "GL_EXT_disjoint_timer_query";
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int QUERIES = 4;
+
+    private final boolean gpu;
+    private final int[] queries = new int[QUERIES];
+    private final boolean[] pending = new boolean[QUERIES];
+    private final int[] result = new int[1];
+    private int next;
+    private long lastFrame;
+
+    public FrameTimer(boolean gpu) {
+        this.gpu = gpu;
+    }
+
+    public static boolean isGpuTimerSupported(String extensions) {
+        return extensions != null && extensions.contains(TIMER_QUERY_EXT);
+    }
+
+    // on surface creation, old queries are gone with the old context
+    public void init() {
+        if (gpu) {
+            GLES30.glGenQueries(QUERIES, queries, 0);
+        }
+        next = 0;
+        lastFrame = 0;
+        for (int i = 0; i < QUERIES; i += 1) {
+            pending[i] = false;
+        }
+    }
+
+    public boolean isGpu() {
+        return gpu;
+    }
+
+    /**
+     * Call at the start of the frame. Returns nanoseconds an earlier frame
+     * took, -1 if none is known.
+     */
+    public long begin() {
+        if (! gpu) {
+            long now = System.nanoTime();
+            long nanos = lastFrame != 0 ? now - lastFrame : -1;
+            lastFrame = now;
+            return nanos;
+        }
+        long nanos = -1;
+        // the oldest query, about to be reused
+        int q = next;
+        if (pending[q]) {
+            GLES30.glGetQueryObjectuiv(queries[q], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if (result[0] != 0) {
+                GLES30.glGetQueryObjectuiv(queries[q], GLES30.GL_QUERY_RESULT, result, 0);
+                nanos = result[0] & 0xFFFFFFFFL;
+            }
+            pending[q] = false;
+        }
+        // e.g. GPU changed its clock, results are not to be trusted
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        if (result[0] != 0) {
+            nanos = -1;
+        }
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[q]);
+        return nanos;
+    }
+
+    // call once the frame is drawn
+    public void end() {
+        if (! gpu) {
+            return;
+        }
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        pending[next] = true;
+        next = (next + 1) % QUERIES;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.Runnable;
+import java.lang.InterruptedException;
+
+/**
+ * Watches the cmd pump from aside so the pump itself may block on the
+ * stream without timeouts. Indicates the "no commands" state every
+ * idleTimeoutMs of silence and unblocks the pump when it is interrupted.
+ * Also reports the pump's status to host on every check and logs its
+ * stats every now and then.
+ */
+public class IdleWatchdog implements Runnable {
+
+    private static final long STATS_INTERVAL_MS = 10000;
+
+    private final AbstractCmdPump cmdPump;
+    private final Thread reader;
+    private final long idleTimeoutMs;
+    private final long checkIntervalMs;
+
+    public IdleWatchdog(AbstractCmdPump cmdPump, Thread reader
+                        , long idleTimeoutMs, long checkIntervalMs) {
+        this.cmdPump = cmdPump;
+        this.reader = reader;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    @Override
+    public void run() {
+        long lastIndicated = 0;
+        long lastStats = SystemClock.uptimeMillis();
+        while (reader.isAlive()) {
+            try {
+                Thread.sleep(checkIntervalMs);
+            } catch (InterruptedException ie) {
+                return;
+            }
+            if (reader.isInterrupted()) {
+                // reader is blocked in read() and will not notice interrupt itself
+                cmdPump.abort();
+                return;
+            }
+            cmdPump.reportStatus();
+            long now = SystemClock.uptimeMillis();
+            if (now - Math.max(cmdPump.getLastActivity(), lastIndicated) >= idleTimeoutMs) {
+                Log.w(ViredroidGLActivity.LOGTAG, "Long time since last command");
+                cmdPump.indicateIdle();
+                lastIndicated = now;
+            }
+            if (now - lastStats >= STATS_INTERVAL_MS) {
+                cmdPump.logStats();
+                lastStats = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.IOException;
+
+// png or jpeg images, whatever BitmapFactory makes sense of
+public class ImageBitmapCmd extends BaseImageCmd {
+
+    private final BitmapDecoder decoder;
+
+    public ImageBitmapCmd(AbstractCmdPump cmdPump, CmdReader reader
+                          , int screenTexDataHandle, BitmapDecoder decoder) {
+        super(cmdPump, reader, screenTexDataHandle);
+        this.decoder = decoder;
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) throws IOException {
+        // update reaches the queue from decoder once decoded
+        decoder.submit(width, height, xOffset, yOffset, imageBuf);
+        return null;
+    }
+
+    public Update getScreenUpdates(int[] rects, int count
+                                   , PooledBuffer imageBuf) throws IOException {
+        decoder.submit(rects, count, imageBuf);
+        return null;
+    }
+
+    // pump thread merely hands images to the decoder
+    @Override
+    public String toString() {
+        return String.format("%s, %d ms decoding on workers"
+                             , super.toString(), decoder.getDecodeNanos() / 1000000);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Raw RGB images, each one compressed as a zlib stream of its own.
+ */
+public class ImageDeflateCmd extends BaseImageCmd {
+
+    private final BufferPool uploadPool;
+    private final Inflater inflater;
+
+    /**
+     * @param uploadPool buffers pixels are inflated to, must be backed by
+     *   arrays
+     */
+    public ImageDeflateCmd(AbstractCmdPump cmdPump, CmdReader reader
+                           , int screenTexDataHandle, BufferPool uploadPool
+                           , Inflater inflater) {
+        super(cmdPump, reader, screenTexDataHandle);
+        this.uploadPool = uploadPool;
+        this.inflater = inflater;
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) throws IOException {
+        PooledBuffer pixels = null;
+        try {
+            pixels = uploadPool.acquire();
+            ByteBuffer in = imageBuf.getBuffer();
+            inflate(in.array(), in.arrayOffset(), in.limit(), pixels.getBuffer()
+                    , 3 * width * height);
+        } catch (IOException | RuntimeException e) {
+            if (pixels != null) {
+                pixels.release();
+            }
+            throw e;
+        } finally {
+            imageBuf.release();
+        }
+        pixels.getBuffer().flip();
+        return new RGBScreenUpdate(getScreenTexDataHandle(), width, height
+                                   , xOffset, yOffset, pixels);
+    }
+
+    public Update getScreenUpdates(int[] rects, int count
+                                   , PooledBuffer imageBuf) throws IOException {
+        Update[] updates = new Update[count];
+        PooledBuffer pixels = null;
+        boolean done = false;
+        try {
+            pixels = uploadPool.acquire();
+            ByteBuffer out = pixels.getBuffer();
+            ByteBuffer image = imageBuf.getBuffer();
+            byte[] in = image.array();
+            // array of a direct buffer need not start where its memory does
+            int offset = image.arrayOffset();
+            for (int i = 0; i < count; i += 1) {
+                int r = 5 * i;
+                int start = out.position();
+                inflate(in, offset, rects[r + 4], out, 3 * rects[r] * rects[r + 1]);
+                offset += rects[r + 4];
+                updates[i] = new RGBScreenUpdate(getScreenTexDataHandle(), rects[r], rects[r + 1]
+                                                 , rects[r + 2], rects[r + 3]
+                                                 , pixels.retain(), start);
+            }
+            done = true;
+        } finally {
+            imageBuf.release();
+            if (pixels != null) {
+                pixels.release(); // updates hold their own references
+            }
+            if (! done) {
+                for (Update u : updates) {
+                    if (u != null) {
+                        u.release();
+                    }
+                }
+            }
+        }
+        return new MultiUpdate(updates);
+    }
+
+    // inflates exactly size bytes to out
+    private void inflate(byte[] in, int offset, int length, ByteBuffer out
+                         , int size) {
+        if (size > out.remaining()) {
+            throw new RuntimeException("image exceeds screen size");
+        }
+        inflater.reset();
+        inflater.setInput(in, offset, length);
+        byte[] a = out.array();
+        int pos = out.arrayOffset() + out.position();
+        int end = pos + size;
+        try {
+            while (pos < end) {
+                int n = inflater.inflate(a, pos, end - pos);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    throw new RuntimeException("deflated image is smaller than its rectangle");
+                }
+                pos += n;
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Failed to inflate image", e);
+        }
+        out.position(out.position() + size);
+    }
+}
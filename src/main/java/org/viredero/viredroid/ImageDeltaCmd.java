@@ -0,0 +1,192 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Screen updates as difference against the previous screen content. Image
+ * of a rectangle is a sequence of runs over its RGB bytes in row order:
+ * uint16 count of unchanged bytes, uint16 count of changed bytes and the
+ * latter XOR'ed with previous value. Previous content is kept in a shadow
+ * copy of the screen, zeroed at start.
+ */
+public class ImageDeltaCmd extends BaseImageCmd {
+
+    private static final int RUN_HEADER_SIZE = 4;
+
+    private final BufferPool uploadPool;
+    private final int screenWidth;
+    private final int screenHeight;
+    // only ever touched by pump thread
+    private final byte[] shadow;
+    // changed rows of the last decoded rectangle, none if first > last
+    private int firstRow;
+    private int lastRow;
+
+    public ImageDeltaCmd(AbstractCmdPump cmdPump, CmdReader reader
+                         , int screenTexDataHandle, BufferPool uploadPool) {
+        super(cmdPump, reader, screenTexDataHandle);
+        this.uploadPool = uploadPool;
+        this.screenWidth = cmdPump.getWidth();
+        this.screenHeight = cmdPump.getHeight();
+        this.shadow = new byte[3 * screenWidth * screenHeight];
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) throws IOException {
+        try {
+            ByteBuffer payload = imageBuf.getBuffer();
+            decode(payload.array(), payload.arrayOffset(), payload.limit()
+                   , width, height, xOffset, yOffset);
+        } finally {
+            imageBuf.release();
+        }
+        if (firstRow > lastRow) {
+            return null;
+        }
+        PooledBuffer pixels = uploadPool.acquire();
+        ByteBuffer out = pixels.getBuffer();
+        copyRows(out, width, xOffset, yOffset, firstRow, lastRow);
+        out.flip();
+        return new RGBScreenUpdate(getScreenTexDataHandle(), width, lastRow - firstRow + 1
+                                   , xOffset, yOffset + firstRow, pixels);
+    }
+
+    /**
+     * Uploads a rectangle of the screen as the shadow has it, e.g. to redraw
+     * pixels lost on their way to the texture. Pump thread only.
+     */
+    public Update getShadowUpdate(int width, int height, int xOffset
+                                  , int yOffset) throws IOException {
+        PooledBuffer pixels = uploadPool.acquire();
+        ByteBuffer out = pixels.getBuffer();
+        copyRows(out, width, xOffset, yOffset, 0, height - 1);
+        out.flip();
+        return new RGBScreenUpdate(getScreenTexDataHandle(), width, height
+                                   , xOffset, yOffset, pixels);
+    }
+
+    public Update getScreenUpdates(int[] rects, int count
+                                   , PooledBuffer imageBuf) throws IOException {
+        Update[] updates = new Update[count];
+        int changed = 0;
+        PooledBuffer pixels = null;
+        boolean done = false;
+        try {
+            ByteBuffer in = imageBuf.getBuffer();
+            byte[] payload = in.array();
+            // array of a direct buffer need not start where its memory does
+            int offset = in.arrayOffset();
+            for (int r = 0; r < 5 * count; r += 5) {
+                int width = rects[r];
+                decode(payload, offset, rects[r + 4], width, rects[r + 1]
+                       , rects[r + 2], rects[r + 3]);
+                offset += rects[r + 4];
+                if (firstRow > lastRow) {
+                    continue;
+                }
+                if (pixels == null) {
+                    pixels = uploadPool.acquire();
+                }
+                ByteBuffer out = pixels.getBuffer();
+                if (3 * width * (lastRow - firstRow + 1) > out.remaining()) {
+                    throw new RuntimeException("changed rectangles exceed screen size");
+                }
+                int start = out.position();
+                copyRows(out, width, rects[r + 2], rects[r + 3], firstRow, lastRow);
+                updates[changed] = new RGBScreenUpdate(getScreenTexDataHandle(), width
+                                                       , lastRow - firstRow + 1, rects[r + 2]
+                                                       , rects[r + 3] + firstRow
+                                                       , pixels.retain(), start);
+                changed += 1;
+            }
+            done = true;
+        } finally {
+            imageBuf.release();
+            if (pixels != null) {
+                pixels.release(); // updates hold their own references
+            }
+            if (! done) {
+                for (int i = 0; i < changed; i += 1) {
+                    updates[i].release();
+                }
+            }
+        }
+        if (changed == 0) {
+            return null;
+        }
+        return new MultiUpdate(Arrays.copyOf(updates, changed));
+    }
+
+    // XORs changed runs of payload into the shadow, remembers changed rows
+    private void decode(byte[] payload, int offset, int length, int width
+                        , int height, int xOffset, int yOffset) {
+        if (width <= 0 || height <= 0 || xOffset < 0 || yOffset < 0
+            || xOffset + width > screenWidth || yOffset + height > screenHeight) {
+            throw new RuntimeException("rectangle is out of screen");
+        }
+        int rowBytes = 3 * width;
+        int total = rowBytes * height;
+        int end = offset + length;
+        int pos = 0; // within the rectangle
+        int i = offset;
+        firstRow = height;
+        lastRow = -1;
+        while (i < end) {
+            if (end - i < RUN_HEADER_SIZE) {
+                throw new RuntimeException("Truncated delta run");
+            }
+            pos += ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+            int left = ((payload[i + 2] & 0xFF) << 8) | (payload[i + 3] & 0xFF);
+            i += RUN_HEADER_SIZE;
+            if (pos + left > total || i + left > end) {
+                throw new RuntimeException("Delta run is out of rectangle");
+            }
+            if (left > 0) {
+                firstRow = Math.min(firstRow, pos / rowBytes);
+                lastRow = Math.max(lastRow, (pos + left - 1) / rowBytes);
+            }
+            while (left > 0) {
+                int row = pos / rowBytes;
+                int col = pos - row * rowBytes;
+                int n = Math.min(left, rowBytes - col);
+                int s = 3 * ((yOffset + row) * screenWidth + xOffset) + col;
+                for (int k = 0; k < n; k += 1) {
+                    shadow[s + k] ^= payload[i + k];
+                }
+                i += n;
+                pos += n;
+                left -= n;
+            }
+        }
+    }
+
+    private void copyRows(ByteBuffer out, int width, int xOffset, int yOffset
+                          , int first, int last) {
+        for (int row = first; row <= last; row += 1) {
+            out.put(shadow, 3 * ((yOffset + row) * screenWidth + xOffset), 3 * width);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+
+/**
+ * ETC2 compressed images, row after row of 4x4 pixel blocks. Rectangles
+ * start on block boundaries, partial blocks only where they end at the
+ * screen edge.
+ */
+public class ImageETC2Cmd extends BaseImageCmd {
+
+    private final int screenWidth;
+    private final int screenHeight;
+
+    public ImageETC2Cmd(AbstractCmdPump cmdPump, CmdReader reader
+                        , int screenTexDataHandle) {
+        super(cmdPump, reader, screenTexDataHandle);
+        this.screenWidth = cmdPump.getWidth();
+        this.screenHeight = cmdPump.getHeight();
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) {
+        try {
+            checkRect(width, height, xOffset, yOffset, imageBuf.getBuffer().limit());
+        } catch (RuntimeException e) {
+            imageBuf.release();
+            throw e;
+        }
+        return getRectUpdate(width, height, xOffset, yOffset, imageBuf, 0);
+    }
+
+    @Override
+    protected Update getRectUpdate(int width, int height, int xOffset, int yOffset
+                                   , PooledBuffer imageBuf, int offset) {
+        return new ETC2ScreenUpdate(getScreenTexDataHandle(), width, height
+                                    , xOffset, yOffset, imageBuf, offset);
+    }
+
+    @Override
+    protected void checkRect(int width, int height, int xOffset, int yOffset
+                             , int size) {
+        if (((xOffset | yOffset) & 3) != 0) {
+            throw new RuntimeException("ETC2 rectangle is not aligned to blocks");
+        }
+        // GL rejects partial blocks anywhere else
+        if (((width & 3) != 0 && xOffset + width != screenWidth)
+            || ((height & 3) != 0 && yOffset + height != screenHeight)) {
+            throw new RuntimeException("ETC2 rectangle ends in a partial block off the screen edge");
+        }
+        if (size < ETC2ScreenUpdate.getByteCount(width, height)) {
+            throw new RuntimeException("image size is less than its rectangle");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+
+public class ImageRGB565Cmd extends BaseImageCmd {
+
+    public ImageRGB565Cmd(AbstractCmdPump cmdPump, CmdReader reader
+                          , int screenTexDataHandle) {
+        super(cmdPump, reader, screenTexDataHandle);
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) {
+        return new RGB565ScreenUpdate(getScreenTexDataHandle(), width, height
+                                      , xOffset, yOffset, imageBuf, 0);
+    }
+
+    @Override
+    protected Update getRectUpdate(int width, int height, int xOffset, int yOffset
+                                   , PooledBuffer imageBuf, int offset) {
+        return new RGB565ScreenUpdate(getScreenTexDataHandle(), width, height
+                                      , xOffset, yOffset, imageBuf, offset);
+    }
+
+    @Override
+    protected void checkRect(int width, int height, int xOffset, int yOffset
+                             , int size) {
+        if (size < 2 * width * height) {
+            throw new RuntimeException("image size is less than its rectangle");
+        }
+    }
+}
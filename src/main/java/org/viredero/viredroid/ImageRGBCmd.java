@@ -20,20 +20,33 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
-import java.nio.ByteBuffer;
 
 public class ImageRGBCmd extends BaseImageCmd {
 
-    public ImageRGBCmd(AbstractCmdPump cmdPump, InputStream s
+    public ImageRGBCmd(AbstractCmdPump cmdPump, CmdReader reader
                        , int screenTexDataHandle) {
-        super(cmdPump, s, screenTexDataHandle);
+        super(cmdPump, reader, screenTexDataHandle);
     }
 
     public Update getScreenUpdate(int width, int height
                                   , int xOffset, int yOffset
-                                  , ByteBuffer imageBuf) {
+                                  , PooledBuffer imageBuf) {
         return new RGBScreenUpdate(getScreenTexDataHandle(), width, height
                                 , xOffset, yOffset, imageBuf);
     }
+
+    @Override
+    protected Update getRectUpdate(int width, int height, int xOffset, int yOffset
+                                   , PooledBuffer imageBuf, int offset) {
+        return new RGBScreenUpdate(getScreenTexDataHandle(), width, height
+                                   , xOffset, yOffset, imageBuf, offset);
+    }
+
+    @Override
+    protected void checkRect(int width, int height, int xOffset, int yOffset
+                             , int size) {
+        if (size < 3 * width * height) {
+            throw new RuntimeException("image size is less than its rectangle");
+        }
+    }
 }
@@ -20,18 +20,21 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
-import java.nio.ByteBuffer;
 
 public class ImageSkipCmd extends BaseImageCmd {
     // this guy is here solely for skipping data
-    public ImageSkipCmd(InputStream is) {
-        super(is);
+    public ImageSkipCmd(CmdReader reader) {
+        super(reader);
     }
 
     public Update getScreenUpdate(int width, int height
                                   , int xOffset, int yOffset
-                                  , ByteBuffer imageBuf) {
+                                  , PooledBuffer imageBuf) {
+        return null;
+    }
+
+    public Update getScreenUpdates(int[] rects, int count
+                                   , PooledBuffer imageBuf) {
         return null;
     }
 }
@@ -0,0 +1,93 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+
+/**
+ * Semi-planar yuv 4:2:0 images: luma plane, then half resolution plane of
+ * interleaved u and v. Rectangles are aligned to even pixels.
+ */
+public class ImageYUVCmd extends BaseImageCmd {
+
+    private final int chromaTexId;
+
+    public ImageYUVCmd(AbstractCmdPump cmdPump, CmdReader reader
+                       , int screenTexDataHandle, int chromaTexDataHandle) {
+        super(cmdPump, reader, screenTexDataHandle);
+        this.chromaTexId = chromaTexDataHandle;
+    }
+
+    public Update getScreenUpdate(int width, int height
+                                  , int xOffset, int yOffset
+                                  , PooledBuffer imageBuf) {
+        check(width, height, xOffset, yOffset, imageBuf.getBuffer().limit(), imageBuf);
+        Update u = new MultiUpdate(luma(width, height, xOffset, yOffset, imageBuf, 0)
+                                   , chroma(width, height, xOffset, yOffset, imageBuf, 0));
+        imageBuf.release(); // updates hold their own references
+        return u;
+    }
+
+    public Update getScreenUpdates(int[] rects, int count
+                                   , PooledBuffer imageBuf) {
+        for (int r = 0; r < 5 * count; r += 5) {
+            check(rects[r], rects[r + 1], rects[r + 2], rects[r + 3], rects[r + 4], imageBuf);
+        }
+        Update[] updates = new Update[2 * count];
+        int offset = 0;
+        for (int i = 0; i < count; i += 1) {
+            int r = 5 * i;
+            updates[2 * i] = luma(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]
+                                  , imageBuf, offset);
+            updates[2 * i + 1] = chroma(rects[r], rects[r + 1], rects[r + 2], rects[r + 3]
+                                        , imageBuf, offset);
+            offset += rects[r + 4];
+        }
+        imageBuf.release();
+        return new MultiUpdate(updates);
+    }
+
+    private static void check(int width, int height, int xOffset, int yOffset
+                              , int size, PooledBuffer imageBuf) {
+        if (((width | height | xOffset | yOffset) & 1) != 0) {
+            imageBuf.release();
+            throw new RuntimeException("yuv rectangle is not aligned to even pixels");
+        }
+        if (size < width * height * 3 / 2) {
+            imageBuf.release();
+            throw new RuntimeException("image size is less than its rectangle");
+        }
+    }
+
+    private Update luma(int width, int height, int xOffset, int yOffset
+                        , PooledBuffer imageBuf, int offset) {
+        return new SubImageUpdate(getScreenTexDataHandle(), GLES20.GL_LUMINANCE
+                                  , width, height, xOffset, yOffset
+                                  , imageBuf.retain(), offset);
+    }
+
+    private Update chroma(int width, int height, int xOffset, int yOffset
+                          , PooledBuffer imageBuf, int offset) {
+        return new SubImageUpdate(chromaTexId, GLES20.GL_LUMINANCE_ALPHA
+                                  , width / 2, height / 2, xOffset / 2, yOffset / 2
+                                  , imageBuf.retain(), offset + width * height);
+    }
+}
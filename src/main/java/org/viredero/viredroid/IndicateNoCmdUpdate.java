@@ -22,26 +22,80 @@ package org.viredero.viredroid;
 
 import java.nio.ByteBuffer;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 public class IndicateNoCmdUpdate extends MultiUpdate {
     private static final int BORDER_WIDTH = 10;
     private static final int MAX_PIXELS = 10000 * BORDER_WIDTH;
-    private static final ByteBuffer BORDERS_BYTES;
-    
-    static {
-        BORDERS_BYTES = ByteBuffer.allocateDirect(MAX_PIXELS * 3);
-        byte[] buf = BORDERS_BYTES.array();
-        for (int i = 0; i < MAX_PIXELS; i += 1) {
-            buf[3*i + 1] = 127;
-            buf[3*i] = buf[3*i + 2] = 0;
+    private static final ByteBuffer BORDERS_RGB = fill(new byte[] {0, 127, 0});
+    private static final ByteBuffer BORDERS_RGBA = fill(new byte[] {0, 127, 0, -1});
+    // green as seen through the png screen texture swizzle, see SetupScreen
+    private static final ByteBuffer BORDERS_SWIZZLED = fill(new byte[] {127, 0, 0, -1});
+    // the same green packed in little endian 5-6-5 bits
+    private static final ByteBuffer BORDERS_RGB565 = fill(new byte[] {(byte)0xE0, 0x03});
+    // the same green as ETC2 blocks: 4 bit base color, smallest modifier
+    private static final ByteBuffer BORDERS_ETC2 = fill(new byte[] {0, 0x77, 0, 0, 0, 0, 0, 0});
+    // borders of compressed screen are whole blocks
+    private static final int ETC2_BORDER_WIDTH = 12;
+    // the same green in BT.601 limited range, u and v interleaved
+    private static final ByteBuffer BORDERS_LUMA = fill(new byte[] {80});
+    private static final ByteBuffer BORDERS_CHROMA = fill(new byte[] {91, 81});
+
+    private static ByteBuffer fill(byte[] pixel) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(MAX_PIXELS * pixel.length);
+        byte[] buf = bytes.array();
+        for (int i = 0; i < buf.length; i += 1) {
+            buf[i] = pixel[i % pixel.length];
         }
+        return bytes;
+    }
+
+    public IndicateNoCmdUpdate(int texId, int screenWidth, int screenHeight
+                               , int format, int type, boolean swizzled) {
+        super(format == GLES30.GL_COMPRESSED_RGB8_ETC2
+              ? etc2Borders(texId, screenWidth, screenHeight)
+              : borders(texId, format, type, screenWidth, screenHeight, BORDER_WIDTH
+                        , type == GLES20.GL_UNSIGNED_SHORT_5_6_5 ? BORDERS_RGB565
+                        : format == GLES20.GL_RGB ? BORDERS_RGB
+                        : swizzled ? BORDERS_SWIZZLED : BORDERS_RGBA));
     }
-    
-    public IndicateNoCmdUpdate(int texId, int screenWidth, int screenHeight) {
-        super(new ScreenUpdate(texId, BORDER_WIDTH, screenHeight, 0, 0, BORDERS_BYTES)
-              , new ScreenUpdate(texId, screenWidth, BORDER_WIDTH, 0, screenHeight - BORDER_WIDTH, BORDERS_BYTES)
-              , new ScreenUpdate(texId, BORDER_WIDTH, screenHeight, screenWidth - BORDER_WIDTH, 0, BORDERS_BYTES)
-              , new ScreenUpdate(texId, screenWidth, BORDER_WIDTH, 0, 0, BORDERS_BYTES));
+
+    /**
+     * Borders on yuv screen, luma in texId and chroma at half resolution
+     * in chromaTexId.
+     */
+    public IndicateNoCmdUpdate(int texId, int chromaTexId, int screenWidth
+                               , int screenHeight) {
+        super(new MultiUpdate(borders(texId, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE
+                                      , screenWidth, screenHeight, BORDER_WIDTH
+                                      , BORDERS_LUMA))
+              , new MultiUpdate(borders(chromaTexId, GLES20.GL_LUMINANCE_ALPHA
+                                        , GLES20.GL_UNSIGNED_BYTE, screenWidth / 2
+                                        , screenHeight / 2, BORDER_WIDTH / 2
+                                        , BORDERS_CHROMA)));
     }
 
+    // borders of compressed screen, right and bottom ones start on block
+    //   boundary and take partial blocks up to the edge
+    private static Update[] etc2Borders(int texId, int screenWidth, int screenHeight) {
+        int right = (screenWidth - ETC2_BORDER_WIDTH) & ~3;
+        int bottom = (screenHeight - ETC2_BORDER_WIDTH) & ~3;
+        return new Update[] {
+            new ETC2ScreenUpdate(texId, ETC2_BORDER_WIDTH, screenHeight, 0, 0, BORDERS_ETC2)
+            , new ETC2ScreenUpdate(texId, screenWidth, screenHeight - bottom, 0, bottom, BORDERS_ETC2)
+            , new ETC2ScreenUpdate(texId, screenWidth - right, screenHeight, right, 0, BORDERS_ETC2)
+            , new ETC2ScreenUpdate(texId, screenWidth, ETC2_BORDER_WIDTH, 0, 0, BORDERS_ETC2)
+        };
+    }
+
+    private static Update[] borders(int texId, int format, int type, int screenWidth
+                                    , int screenHeight, int border
+                                    , ByteBuffer bytes) {
+        return new Update[] {
+            new SubImageUpdate(texId, format, type, border, screenHeight, 0, 0, bytes)
+            , new SubImageUpdate(texId, format, type, screenWidth, border, 0, screenHeight - border, bytes)
+            , new SubImageUpdate(texId, format, type, border, screenHeight, screenWidth - border, 0, bytes)
+            , new SubImageUpdate(texId, format, type, screenWidth, border, 0, 0, bytes)
+        };
+    }
 }
@@ -20,22 +20,23 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.DataInputStream;
+import java.nio.ByteBuffer;
 
 public class InitReplyCmd implements Command {
 
-    private static final int CMD_BYTE_SIZE = 7;
+    // result code, screen format (16 bits), pointer format, width and height
+    private static final int CMD_BYTE_SIZE = 12;
 
-    private final DataInputStream dis;
+    private final CmdReader reader;
     private final int screenTexId;
     private final int pointerTexId;
     private final AbstractCmdPump cmdPump;
+    private final ByteBuffer header = ByteBuffer.allocate(CMD_BYTE_SIZE);
 
-    public InitReplyCmd(AbstractCmdPump cmdPump, InputStream is
+    public InitReplyCmd(AbstractCmdPump cmdPump, CmdReader reader
                         , int screenTexDataHandle, int pointerTexDataHandle) {
-        this.dis = new DataInputStream(is);
+        this.reader = reader;
         this.screenTexId = screenTexDataHandle;
         this.pointerTexId = pointerTexDataHandle;
         this.cmdPump = cmdPump;
@@ -43,22 +44,27 @@ public class InitReplyCmd implements Command {
 
     @Override
     public Update exec() throws IOException {
-        int res = dis.read();
+        header.clear();
+        reader.readFully(header);
+        int res = header.get(0) & 0xFF;
         InitReplyResultCode code = InitReplyResultCode.fromInt(res);
         if (code != InitReplyResultCode.SUCCESS) {
             throw new RuntimeException("Handshake failed: " + code.getMessage());
         }
-        int scrFmt = dis.read();
-        int pntrFmt = dis.read();
-        int width = dis.readInt();
-        int height = dis.readInt();
+        int scrFmt = header.getShort(1) & 0xFFFF;
+        int pntrFmt = header.get(3) & 0xFF;
+        int width = header.getInt(4);
+        int height = header.getInt(8);
         cmdPump.setDimentions(width, height);
         cmdPump.setScreenFormat(scrFmt);
-        return new SetupScreen(screenTexId, pointerTexId, width, height);
+        return new SetupScreen(screenTexId, pointerTexId, width, height
+                               , cmdPump.getScreenTexFormat(), cmdPump.getScreenTexType()
+                               , cmdPump.isScreenSwizzled()
+                               , cmdPump.getChromaTexDataHandle());
     }
 
     @Override
     public void skip() throws IOException {
-        dis.skipBytes(CMD_BYTE_SIZE);
+        reader.skip(CMD_BYTE_SIZE);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Many images in one command: rectangle count, then width, height, x
+ * offset, y offset and size of every image, all int32, then images
+ * themselves one after another.
+ */
+public class MultiImageCmd implements Command {
+
+    private static final int RECT_HEADER_SIZE = 20;
+    private static final int MAX_RECTS = 4096;
+
+    private final CmdReader reader;
+    // null if images are to be skipped
+    private final BaseImageCmd imageCmd;
+    private final BufferPool pool;
+    private final ByteBuffer count = ByteBuffer.allocate(4);
+    private ByteBuffer headers = ByteBuffer.allocate(64 * RECT_HEADER_SIZE);
+    private int[] rects = new int[64 * 5];
+
+    public MultiImageCmd(CmdReader reader) {
+        this(null, reader, null);
+    }
+
+    public MultiImageCmd(AbstractCmdPump cmdPump, CmdReader reader
+                         , BaseImageCmd imageCmd) {
+        this.reader = reader;
+        this.imageCmd = imageCmd;
+        this.pool = cmdPump == null ? null : cmdPump.getImagePool();
+    }
+
+    // reads rectangle headers into rects, returns total size of images
+    private int readHeaders(int n) throws IOException {
+        if (n <= 0 || n > MAX_RECTS) {
+            throw new RuntimeException("Bad rectangle count " + n);
+        }
+        if (headers.capacity() < n * RECT_HEADER_SIZE) {
+            headers = ByteBuffer.allocate(n * RECT_HEADER_SIZE);
+            rects = new int[n * 5];
+        }
+        headers.clear();
+        headers.limit(n * RECT_HEADER_SIZE);
+        reader.readFully(headers);
+        long total = 0;
+        for (int i = 0; i < n * 5; i += 1) {
+            rects[i] = headers.getInt(4 * i);
+            if (rects[i] < 0) {
+                throw new RuntimeException("Negative value in rectangle header");
+            }
+        }
+        for (int r = 4; r < n * 5; r += 5) {
+            total += rects[r];
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new RuntimeException("images size overflow");
+        }
+        return (int)total;
+    }
+
+    private int readCount() throws IOException {
+        count.clear();
+        reader.readFully(count);
+        return count.getInt(0);
+    }
+
+    @Override
+    public Update exec() throws IOException {
+        int n = readCount();
+        int total = readHeaders(n);
+        if (imageCmd == null) {
+            reader.skip(total);
+            return null;
+        }
+        if (total > pool.getBufferSize()) {
+            throw new RuntimeException("images size exceeds screen size");
+        }
+        PooledBuffer pooled = pool.acquire();
+        ByteBuffer imageBuf = pooled.getBuffer();
+        imageBuf.limit(total);
+        try {
+            reader.readFully(imageBuf);
+        } catch (IOException e) {
+            pooled.release();
+            throw e;
+        }
+        imageBuf.flip();
+        return imageCmd.getTimedScreenUpdates(rects, n, pooled, total);
+    }
+
+    @Override
+    public void skip() throws IOException {
+        int n = readCount();
+        reader.skip(readHeaders(n));
+    }
+}
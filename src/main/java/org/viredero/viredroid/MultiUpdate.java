@@ -30,7 +30,54 @@ public class MultiUpdate implements Update {
     @Override
     public void draw() {
         for (Update u : updates) {
-            u.draw();
+            if (u != null) {
+                u.draw();
+            }
         }
     }
+
+    @Override
+    public int getByteCount() {
+        int count = 0;
+        for (Update u : updates) {
+            if (u != null) {
+                count += u.getByteCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void release() {
+        for (Update u : updates) {
+            if (u != null) {
+                u.release();
+            }
+        }
+    }
+
+    /**
+     * Updates this one consists of, null where one was dropped.
+     */
+    public Update[] getParts() {
+        return updates;
+    }
+
+    /**
+     * Releases and drops parts newer overwrites, also within nested
+     * updates. Returns true if nothing is left.
+     */
+    public boolean dropCovered(SubImageUpdate newer) {
+        boolean empty = true;
+        for (int i = 0; i < updates.length; i += 1) {
+            Update u = updates[i];
+            if ((u instanceof SubImageUpdate && newer.covers((SubImageUpdate) u))
+                || (u instanceof MultiUpdate && ((MultiUpdate) u).dropCovered(newer))) {
+                u.release();
+                updates[i] = null;
+            }
+            empty &= updates[i] == null;
+        }
+        return empty;
+    }
 }
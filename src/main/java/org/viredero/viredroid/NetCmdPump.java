@@ -24,45 +24,52 @@ import android.util.Log;
 
 import java.lang.Runnable;
 import java.io.IOException;
-import java.net.UnknownHostException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetAddress;
-import java.net.Socket;
-import java.util.concurrent.BlockingQueue;
-import android.util.Log;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class NetCmdPump extends AbstractCmdPump {
 
-    private final InetAddress addr;
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int READ_AHEAD_SIZE = 64 * 1024;
+
+    private final String addr;
     private final int port;
-    private Socket s;
+    private SocketChannel channel;
 
-    public NetCmdPump(BlockingQueue<Update> queue, ViredroidRenderer renderer
+    public NetCmdPump(UpdateQueue queue, ViredroidRenderer renderer
                       , int screenTexDataHandle, int pointTexDataHandle
                       , String addr, int port){
         super(queue, renderer, screenTexDataHandle, pointTexDataHandle);
+        this.addr = addr;
         this.port = port;
-        try {
-            this.addr = InetAddress.getByName(addr);
-        } catch (UnknownHostException e) {
-            throw new RuntimeException("failed to resolve '" + addr + "'", e);
+    }
+
+    private SocketChannel connect() throws IOException {
+        if (channel == null) {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // has to be set before connect to get a big enough TCP window
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+            // resolved here so DNS lookup happens on the pump thread
+            InetSocketAddress sockAddr = new InetSocketAddress(addr, port);
+            if (sockAddr.isUnresolved()) {
+                throw new IOException("failed to resolve '" + addr + "'");
+            }
+            channel.connect(sockAddr);
+            Log.i(ViredroidGLActivity.LOGTAG, "Connected to " + addr + ":" + port);
         }
+        return channel;
     }
 
     @Override
-    public InputStream createIS() throws IOException {
-        if (s != null) {
-            s = new Socket(addr, port);
-        }
-        return s.getInputStream();
+    public CmdReader createReader() throws IOException {
+        return new CmdReader(connect(), READ_AHEAD_SIZE);
     }
 
     @Override
-    public OutputStream createOS() throws IOException {
-        if (s != null) {
-            s = new Socket(addr, port);
-        }
-        return s.getOutputStream();
+    public WritableByteChannel createOutChannel() throws IOException {
+        return connect();
     }
 }
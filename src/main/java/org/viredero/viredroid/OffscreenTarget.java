@@ -0,0 +1,90 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Framebuffer to draw the scene into at lower resolution, to be stretched
+ * over the real one afterwards. Needs GLES 3.0, GL thread only.
+ */
+public class OffscreenTarget {
+
+    private final int[] handles = new int[2];
+    private int fbo;
+    private int colorBuffer;
+    private int depthBuffer;
+    private int width;
+    private int height;
+
+    // on surface creation, old GL objects are gone with the old context
+    public void init() {
+        GLES20.glGenFramebuffers(1, handles, 0);
+        fbo = handles[0];
+        GLES20.glGenRenderbuffers(2, handles, 0);
+        colorBuffer = handles[0];
+        depthBuffer = handles[1];
+        if (fbo == 0 || colorBuffer == 0 || depthBuffer == 0) {
+            throw new RuntimeException("Error creating offscreen target");
+        }
+        width = 0;
+        height = 0;
+    }
+
+    /**
+     * Binds the target, sized width x height.
+     */
+    public void bind(int width, int height) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, fbo);
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, colorBuffer);
+        GLES20.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES30.GL_RGBA8, width, height);
+        GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthBuffer);
+        GLES20.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16
+                                     , width, height);
+        GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+        GLES20.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0
+                                         , GLES20.GL_RENDERBUFFER, colorBuffer);
+        GLES20.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT
+                                         , GLES20.GL_RENDERBUFFER, depthBuffer);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            throw new RuntimeException("Offscreen target incomplete: " + status);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Stretches what was drawn over x, y, w, h of targetFbo and binds
+     * targetFbo back. Scissor box must let it through.
+     */
+    public void blitTo(int targetFbo, int x, int y, int w, int h) {
+        GLES20.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, fbo);
+        GLES20.glBindFramebuffer(GLES30.GL_DRAW_FRAMEBUFFER, targetFbo);
+        GLES30.glBlitFramebuffer(0, 0, width, height, x, y, x + w, y + h
+                                 , GLES20.GL_COLOR_BUFFER_BIT, GLES20.GL_LINEAR);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, targetFbo);
+    }
+}
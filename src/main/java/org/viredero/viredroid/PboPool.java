@@ -0,0 +1,100 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of pixel buffer objects (GLES 3.0). The GL thread maps them and
+ * hands them to the pump, the pump writes pixels straight into driver
+ * memory and the GL thread only unmaps and issues the texture upload,
+ * which then does not wait for a copy from client memory. Buffers come
+ * back to the GL thread to be mapped again once released.
+ */
+public class PboPool extends BufferPool {
+
+    private final BlockingQueue<PooledBuffer> unmapped;
+    private boolean created = false;
+
+    public PboPool(int size, int bufferSize) {
+        super(size, bufferSize, false);
+        unmapped = new ArrayBlockingQueue<PooledBuffer>(size);
+    }
+
+    /**
+     * Creates buffers on first call, maps buffers released since last call.
+     * GL thread only.
+     */
+    public void onNewFrame() {
+        if (! created) {
+            create();
+        }
+        PooledBuffer buf;
+        while ((buf = unmapped.poll()) != null) {
+            map(buf);
+            super.recycle(buf);
+        }
+    }
+
+    @Override
+    void recycle(PooledBuffer buf) {
+        if (buf.isMapped()) {
+            super.recycle(buf); // was dropped before upload, still good to write
+        } else {
+            unmapped.offer(buf);
+        }
+    }
+
+    private void create() {
+        int[] pbos = new int[getSize()];
+        GLES20.glGenBuffers(pbos.length, pbos, 0);
+        for (int pbo : pbos) {
+            if (pbo == 0) {
+                throw new RuntimeException("Error creating pixel buffer object");
+            }
+            GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pbo);
+            GLES20.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, getBufferSize()
+                                , null, GLES30.GL_STREAM_DRAW);
+            unmapped.add(new PooledBuffer(this, pbo));
+        }
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+        created = true;
+    }
+
+    private void map(PooledBuffer buf) {
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, buf.getPbo());
+        // invalidate lets the driver hand out fresh memory instead of
+        //   waiting for the previous upload from this buffer to finish
+        ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(
+            GLES30.GL_PIXEL_UNPACK_BUFFER, 0, getBufferSize()
+            , GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+        if (mapped == null) {
+            throw new RuntimeException("Error mapping pixel buffer object");
+        }
+        buf.mapped(mapped);
+    }
+}
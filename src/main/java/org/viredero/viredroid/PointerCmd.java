@@ -20,110 +20,161 @@
 
 package org.viredero.viredroid;
 
-import java.io.InputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 import android.util.Log;
 
+/**
+ * Pointer position x, y (int32) and cursor kind byte, then whatever the
+ * kind needs: nothing, cursor width and height followed by its rgba
+ * pixels, or the same with cursor id in front, or cursor id alone.
+ */
 public class PointerCmd implements Command {
 
+    // x, y (int32) and cursor kind
+    private static final int HEADER_SIZE = 9;
+    // cursor id (int32), present only for cached kinds
+    private static final int CURSOR_ID_SIZE = 4;
+    // cursor width and height, present only if there are pixels
+    private static final int CURSOR_HEADER_SIZE = 8;
+
+    // same cursor, just moved
+    private static final int CURSOR_SAME = 0;
+    // new cursor, pixels follow
+    private static final int CURSOR_NEW = 1;
+    // new cursor to be remembered by id, pixels follow
+    private static final int CURSOR_NEW_CACHED = 2;
+    // cursor remembered before, id only
+    private static final int CURSOR_CACHED = 3;
+
     private int pointerTexDataHandle;
-    private DataInputStream dis;
-    private int x = 0;
-    private int y = 0;
+    private int cursorAtlasTexDataHandle;
+    private CmdReader reader;
+    // size of the current cursor, zero until host sends one
     private int width = 0;
     private int height = 0;
-    private int eraseWidth = 0;
-    private int eraseHeight = 0;
-    private ByteBuffer eraseImageBytes;
-    private ByteBuffer pointerImageBytes;
     private AbstractCmdPump cmdPump;
-    
-    public PointerCmd(AbstractCmdPump cmdPump, InputStream s
-                      , int pointerTexDataHandle) {
+    private ViredroidRenderer renderer;
+    private final CursorCache cache = new CursorCache();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + CURSOR_ID_SIZE
+                                                          + CURSOR_HEADER_SIZE);
+    private final ByteBuffer cursorMiss = ByteBuffer.allocate(4);
+
+    public PointerCmd(AbstractCmdPump cmdPump, CmdReader reader
+                      , ViredroidRenderer renderer, int pointerTexDataHandle) {
         this.pointerTexDataHandle = pointerTexDataHandle;
-        this.dis = new DataInputStream(s);
+        this.cursorAtlasTexDataHandle = renderer.getCursorAtlasTexDataHandle();
+        this.reader = reader;
         this.cmdPump = cmdPump;
+        this.renderer = renderer;
     }
 
     @Override
     public Update exec() throws IOException {
-        PointerUpdate erase = null;
-        if (eraseWidth > 0 && eraseHeight > 0) {
-            erase = new PointerUpdate(
-                pointerTexDataHandle, eraseWidth, eraseHeight
-                , x, y, eraseImageBytes);
+        readHeader();
+        int x = header.getInt(0);
+        int y = header.getInt(4);
+        int kind = header.get(8) & 0xFF;
+        int screenWidth = cmdPump.getWidth();
+        int screenHeight = cmdPump.getHeight();
+        // moves are just uniforms, cursor texture is uploaded only when
+        //   host sends a new one
+        switch (kind) {
+        case CURSOR_SAME:
+            break;
+        case CURSOR_NEW: {
+            readCursorHeader(HEADER_SIZE);
+            ByteBuffer shape = readShape(HEADER_SIZE);
+            return new PointerUpdate(renderer, x, y, width, height, screenWidth, screenHeight
+                                     , pointerTexDataHandle, -1, -1, shape);
         }
-        x = dis.readInt();
-        y = dis.readInt();
-        boolean hasCursor = dis.readBoolean();
-        if (hasCursor) {
-            int rWidth = dis.readInt();
-            int rHeight = dis.readInt();
-            int imageSize = 4 * rWidth * rHeight;
-            if (imageSize <= 0) {
-                throw new RuntimeException("image size <= 0");
+        case CURSOR_NEW_CACHED: {
+            readCursorHeader(HEADER_SIZE + CURSOR_ID_SIZE);
+            int id = header.getInt(HEADER_SIZE);
+            ByteBuffer shape = readShape(HEADER_SIZE + CURSOR_ID_SIZE);
+            if (! CursorCache.fits(width, height)) {
+                // too big for the atlas, host will get a miss next time,
+                //   not an older shape that had the id
+                cache.remove(id);
+                return new PointerUpdate(renderer, x, y, width, height, screenWidth, screenHeight
+                                         , pointerTexDataHandle, -1, -1, shape);
             }
-            if (width != rWidth || height != rHeight) {
-                eraseImageBytes = ByteBuffer.allocateDirect(imageSize);
-                Arrays.fill(eraseImageBytes.array(), (byte)0);
-                pointerImageBytes = ByteBuffer.allocateDirect(imageSize);
-            }
-            byte[] buf = pointerImageBytes.array();
-            int totalRead = 0;
-            while (imageSize > 0) {
-                int read = dis.read(buf, totalRead, imageSize);
-                if (read < 0) {
-                    throw new RuntimeException("Sudden end of stream!");
-                }
-                imageSize -= read;
-                totalRead += read;
-            }
-            width = rWidth;
-            height = rHeight;
-        } else if (width == 0) {
-            eraseWidth = 0;
-            eraseHeight = 0;
-            return erase;
+            CursorCache.Shape s = cache.put(id, width, height);
+            return new PointerUpdate(renderer, x, y, width, height, screenWidth, screenHeight
+                                     , cursorAtlasTexDataHandle, s.getX(), s.getY(), shape);
         }
-        eraseWidth = limitDim(x, width, cmdPump.getWidth());
-        eraseHeight = limitDim(y, height, cmdPump.getHeight());
-        ByteBuffer pntr = pointerImageBytes;
-        if (eraseWidth != width || eraseHeight != height) {
-            pntr = ByteBuffer
-                .allocateDirect(4 * eraseWidth * eraseHeight);
-            byte[] buf = pntr.array();
-            for (int i = 0; i < eraseHeight; i += 1) {
-                pointerImageBytes.position(width * i * 4);
-                pointerImageBytes.get(buf, eraseWidth * i * 4, eraseWidth * 4);
+        case CURSOR_CACHED: {
+            readCursorId();
+            int id = header.getInt(HEADER_SIZE);
+            CursorCache.Shape s = cache.get(id);
+            if (s == null) {
+                // keep the current cursor until host sends this one again
+                Log.d(ViredroidGLActivity.LOGTAG, "Cursor " + id + " is not cached");
+                cursorMiss.clear();
+                cursorMiss.putInt(id);
+                cursorMiss.flip();
+                cmdPump.sendUpstream(UpstreamChannel.CURSOR_MISS_MSG, cursorMiss);
+                break;
             }
-            pointerImageBytes.position(0);
+            width = s.getWidth();
+            height = s.getHeight();
+            return new PointerUpdate(renderer, x, y, width, height, screenWidth, screenHeight
+                                     , cursorAtlasTexDataHandle, s.getX(), s.getY(), null);
+        }
+        default:
+            throw new RuntimeException("Unknown cursor kind " + kind);
         }
-        PointerUpdate draw = new PointerUpdate(
-            pointerTexDataHandle, eraseWidth, eraseHeight
-            , x, y, pntr);
-        if (erase == null) {
-            return draw;
-        } else {
-            return new MultiUpdate(erase, draw);
+        if (width == 0) {
+            return null; // nothing to move yet
         }
+        return new PointerUpdate(renderer, x, y, width, height, screenWidth, screenHeight);
+    }
+
+    // fresh buffer each time, the previous one may still wait in the queue
+    private ByteBuffer readShape(int sizeOffset) throws IOException {
+        int rWidth = header.getInt(sizeOffset);
+        int rHeight = header.getInt(sizeOffset + 4);
+        int imageSize = 4 * rWidth * rHeight;
+        if (rWidth <= 0 || rHeight <= 0 || imageSize <= 0) {
+            throw new RuntimeException("image size <= 0");
+        }
+        ByteBuffer shape = ByteBuffer.allocateDirect(imageSize);
+        reader.readFully(shape);
+        shape.flip();
+        width = rWidth;
+        height = rHeight;
+        return shape;
+    }
+
+    private void readHeader() throws IOException {
+        header.clear();
+        header.limit(HEADER_SIZE);
+        reader.readFully(header);
+    }
+
+    private void readCursorId() throws IOException {
+        header.limit(HEADER_SIZE + CURSOR_ID_SIZE);
+        header.position(HEADER_SIZE);
+        reader.readFully(header);
     }
 
-    private int limitDim(int offset, int val, int limit) {
-        return Math.min(val, limit - offset);
+    // width and height at sizeOffset, with cursor id before them if any
+    private void readCursorHeader(int sizeOffset) throws IOException {
+        header.limit(sizeOffset + CURSOR_HEADER_SIZE);
+        header.position(HEADER_SIZE);
+        reader.readFully(header);
     }
 
     @Override
     public void skip() throws IOException {
-        dis.skipBytes(8); //skip x and y
-        boolean hasCursor = dis.readBoolean();
-        if (hasCursor) {
-            int rWidth = dis.readInt();
-            int rHeight = dis.readInt();
-            int imageSize = 4 * rWidth * rHeight;
-            dis.skipBytes(imageSize);
+        readHeader();
+        int kind = header.get(8) & 0xFF;
+        if (kind == CURSOR_CACHED) {
+            readCursorId();
+        } else if (kind == CURSOR_NEW || kind == CURSOR_NEW_CACHED) {
+            int sizeOffset = kind == CURSOR_NEW ? HEADER_SIZE : HEADER_SIZE + CURSOR_ID_SIZE;
+            readCursorHeader(sizeOffset);
+            reader.skip(4 * header.getInt(sizeOffset) * header.getInt(sizeOffset + 4));
         }
     }
 }
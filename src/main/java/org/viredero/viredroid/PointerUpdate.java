@@ -23,10 +23,89 @@ package org.viredero.viredroid;
 import java.nio.ByteBuffer;
 import android.opengl.GLES20;
 
-public class PointerUpdate extends SubImageUpdate {
+/**
+ * Places cursor of width x height pixels at x, y of the screen. Switches
+ * cursor shape if texId is set: to the whole texture or, if atlas x and y
+ * are set, to a slot of the cursor atlas. Pixels of a new shape are
+ * uploaded there first, without them it is a mere move.
+ */
+public class PointerUpdate implements Update {
+
+    private final ViredroidRenderer renderer;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int screenWidth;
+    private final int screenHeight;
+    // texture holding the shape, 0 if shape stays the same
+    private final int texId;
+    // corner of the shape in cursor atlas, -1 if texture is all of it
+    private final int atlasX;
+    private final int atlasY;
+    // rgba pixels of the shape, null if texture has them already
+    private final ByteBuffer shape;
+
+    public PointerUpdate(ViredroidRenderer renderer, int x, int y, int width
+                         , int height, int screenWidth, int screenHeight) {
+        this(renderer, x, y, width, height, screenWidth, screenHeight, 0, -1, -1, null);
+    }
+
+    public PointerUpdate(ViredroidRenderer renderer, int x, int y, int width
+                         , int height, int screenWidth, int screenHeight
+                         , int texId, int atlasX, int atlasY, ByteBuffer shape) {
+        this.renderer = renderer;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.texId = texId;
+        this.atlasX = atlasX;
+        this.atlasY = atlasY;
+        this.shape = shape;
+    }
+
+    @Override
+    public void draw() {
+        if (texId != 0) {
+            if (atlasX < 0) {
+                if (shape != null) {
+                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+                    GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA
+                                        , width, height, 0, GLES20.GL_RGBA
+                                        , GLES20.GL_UNSIGNED_BYTE, shape);
+                }
+                renderer.setPointerShape(texId, 0f, 0f, 1f, 1f);
+            } else {
+                if (shape != null) {
+                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+                    GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, atlasX, atlasY
+                                           , width, height, GLES20.GL_RGBA
+                                           , GLES20.GL_UNSIGNED_BYTE, shape);
+                }
+                float size = CursorCache.ATLAS_SIZE;
+                renderer.setPointerShape(texId, atlasX / size, atlasY / size
+                                         , width / size, height / size);
+            }
+        }
+        renderer.setPointer(x, y, width, height, screenWidth, screenHeight);
+    }
+
+    /**
+     * Whether this only moves the cursor it finds, keeping its shape.
+     */
+    public boolean isMove() {
+        return texId == 0;
+    }
+
+    @Override
+    public int getByteCount() {
+        return shape != null ? 4 * width * height : 0;
+    }
 
-    public PointerUpdate(int texId, int width, int height, int xOffset
-                         , int yOffset, ByteBuffer bytes) {
-        super(texId, GLES20.GL_RGBA, width, height, xOffset, yOffset, bytes);
+    @Override
+    public void release() {
     }
 }
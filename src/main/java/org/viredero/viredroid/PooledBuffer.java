@@ -0,0 +1,104 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct buffer borrowed from a {@link BufferPool}. Whoever holds a
+ * reference calls {@link #release()} when done with it; the buffer goes
+ * back to the pool when the last reference is released.
+ * Buffers of a {@link PboPool} are mapped pixel buffer objects instead,
+ * the GL thread unmaps them right before uploading.
+ */
+public class PooledBuffer {
+
+    private final BufferPool pool;
+    private final int pbo;
+    private ByteBuffer buffer;
+    private final AtomicInteger refs = new AtomicInteger();
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.pbo = 0;
+    }
+
+    PooledBuffer(BufferPool pool, int pbo) {
+        this.pool = pool;
+        this.pbo = pbo;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * GL name of the pixel buffer object behind this buffer, 0 if none.
+     */
+    public int getPbo() {
+        return pbo;
+    }
+
+    public boolean isMapped() {
+        return buffer != null;
+    }
+
+    /**
+     * Leaves the pixel buffer object unmapped and bound as
+     * GL_PIXEL_UNPACK_BUFFER. GL thread only, may be called again by
+     * every update sharing the buffer.
+     */
+    public void unmap() {
+        GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pbo);
+        if (buffer != null) {
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+            buffer = null;
+        }
+    }
+
+    void mapped(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public PooledBuffer retain() {
+        refs.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        int left = refs.decrementAndGet();
+        if (left == 0) {
+            pool.recycle(this);
+        } else if (left < 0) {
+            throw new IllegalStateException("Buffer released more times than acquired");
+        }
+    }
+
+    void acquired() {
+        refs.set(1);
+        buffer.clear();
+    }
+}
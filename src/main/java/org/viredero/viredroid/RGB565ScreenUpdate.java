@@ -20,14 +20,15 @@
 
 package org.viredero.viredroid;
 
-import java.nio.ByteBuffer;
 import android.opengl.GLES20;
 
-public class ScreenUpdate extends SubImageUpdate {
+// 16 bit pixels, little endian as GL reads them on the device
+public class RGB565ScreenUpdate extends SubImageUpdate {
 
-    public ScreenUpdate(int texId, int width, int height, int xOffset
-                        , int yOffset, ByteBuffer bytes) {
-        super(texId, GLES20.GL_RGB, width, height, xOffset, yOffset, bytes);
+    public RGB565ScreenUpdate(int texId, int width, int height, int xOffset
+                              , int yOffset, PooledBuffer bytes, int offset) {
+        super(texId, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, width, height
+              , xOffset, yOffset, bytes, offset);
     }
 
 }
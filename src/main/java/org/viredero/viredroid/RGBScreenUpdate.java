@@ -26,8 +26,13 @@ import android.opengl.GLES20;
 public class RGBScreenUpdate extends SubImageUpdate {
 
     public RGBScreenUpdate(int texId, int width, int height, int xOffset
-                        , int yOffset, ByteBuffer bytes) {
+                        , int yOffset, PooledBuffer bytes) {
         super(texId, GLES20.GL_RGB, width, height, xOffset, yOffset, bytes);
     }
 
+    public RGBScreenUpdate(int texId, int width, int height, int xOffset
+                           , int yOffset, PooledBuffer bytes, int offset) {
+        super(texId, GLES20.GL_RGB, width, height, xOffset, yOffset, bytes, offset);
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.util.Log;
+
+/**
+ * Picks render resolution scale from frame times, so that the headset
+ * keeps its refresh rate: lower when frames take too long, higher again
+ * once they've been fast for a while. Averages frame times over a window
+ * and keeps every change for a while, so single slow frames don't flip it.
+ * Time between frames can't tell how fast frames are, only that they are
+ * late, so by that the scale only goes down and stays there until the
+ * next surface.
+ */
+public class ResolutionGovernor {
+
+    private static final float STEP = .1f;
+    private static final int MAX_LEVEL = 5; // half the resolution each way
+    private static final int WINDOW = 30;
+    // frames to keep the scale for after a change; longer after lowering it,
+    //   as the higher one was too much already
+    private static final int HOLD_AFTER_DOWN = 300;
+    private static final int HOLD_AFTER_UP = 60;
+
+    private final long budgetNanos;
+    // load (frame time over refresh interval) to go down above and up below
+    private final float downLoad;
+    private final float upLoad;
+    private int level = 0;
+    private long sum;
+    private int count;
+    private int hold;
+
+    /**
+     * @param gpuTimes frame times are GPU time per frame rather than time
+     *   between frames, which is never below the refresh interval
+     */
+    public ResolutionGovernor(float refreshRate, boolean gpuTimes) {
+        budgetNanos = (long)(1000000000L / refreshRate);
+        if (gpuTimes) {
+            downLoad = .9f;
+            upLoad = .6f;
+        } else {
+            downLoad = 1.2f;
+            // vsync keeps it at 1 or above however fast frames are, going
+            //   up again would only miss frames again
+            upLoad = 0f;
+        }
+    }
+
+    public void onFrameTime(long nanos) {
+        if (hold > 0) {
+            hold -= 1;
+            return;
+        }
+        sum += nanos;
+        count += 1;
+        if (count < WINDOW) {
+            return;
+        }
+        float load = (float)sum / count / budgetNanos;
+        sum = 0;
+        count = 0;
+        if (load > downLoad && level < MAX_LEVEL) {
+            level += 1;
+            hold = HOLD_AFTER_DOWN;
+        } else if (load < upLoad && level > 0) {
+            level -= 1;
+            hold = HOLD_AFTER_UP;
+        } else {
+            return;
+        }
+        Log.i(ViredroidGLActivity.LOGTAG, String.format(
+                  "Frames take %.0f%% of refresh interval, render scale is %.1f now"
+                  , load * 100, getScale()));
+    }
+
+    public float getScale() {
+        return 1f - level * STEP;
+    }
+}
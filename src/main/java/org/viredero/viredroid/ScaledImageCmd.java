@@ -0,0 +1,107 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Image in reduced resolution: width, height, x offset and y offset of the
+ * screen rectangle it covers, scale and image size, all int32, then the
+ * image. Image is rgb, scale times smaller than the rectangle both ways
+ * (rounded up) and is stretched over it on GPU. Host sends these for parts
+ * of the screen away from the gaze point, see
+ * {@link UpstreamChannel#GAZE_MSG}.
+ */
+public class ScaledImageCmd implements Command {
+
+    private static final int HEADER_SIZE = 24;
+    private static final int MAX_SCALE = 16;
+
+    private final CmdReader reader;
+    // null if images are to be skipped
+    private final Upscaler upscaler;
+    private final BufferPool pool;
+    private final int screenTexDataHandle;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    public ScaledImageCmd(CmdReader reader) {
+        this(null, reader, null, 0);
+    }
+
+    public ScaledImageCmd(AbstractCmdPump cmdPump, CmdReader reader
+                          , Upscaler upscaler, int screenTexDataHandle) {
+        this.reader = reader;
+        this.upscaler = upscaler;
+        this.pool = cmdPump == null ? null : cmdPump.getImagePool();
+        this.screenTexDataHandle = screenTexDataHandle;
+    }
+
+    @Override
+    public Update exec() throws IOException {
+        header.clear();
+        reader.readFully(header);
+        int width = header.getInt(0);
+        int height = header.getInt(4);
+        int xOffset = header.getInt(8);
+        int yOffset = header.getInt(12);
+        int scale = header.getInt(16);
+        int imageSize = header.getInt(20);
+        if (upscaler == null) {
+            reader.skip(imageSize);
+            return null;
+        }
+        if (width <= 0 || height <= 0 || xOffset < 0 || yOffset < 0) {
+            throw new RuntimeException("Bad scaled image rectangle");
+        }
+        if (scale <= 0 || scale > MAX_SCALE) {
+            throw new RuntimeException("Bad image scale " + scale);
+        }
+        int scaledWidth = (width + scale - 1) / scale;
+        int scaledHeight = (height + scale - 1) / scale;
+        if (imageSize < 3 * scaledWidth * scaledHeight) {
+            throw new RuntimeException("image size is less than its rectangle");
+        }
+        if (imageSize > pool.getBufferSize()) {
+            throw new RuntimeException("image size exceeds screen size");
+        }
+        PooledBuffer pooled = pool.acquire();
+        ByteBuffer imageBuf = pooled.getBuffer();
+        imageBuf.limit(imageSize);
+        try {
+            reader.readFully(imageBuf);
+        } catch (IOException e) {
+            pooled.release();
+            throw e;
+        }
+        imageBuf.flip();
+        return new ScaledImageUpdate(upscaler, screenTexDataHandle, width, height
+                                     , xOffset, yOffset, scaledWidth, scaledHeight
+                                     , pooled);
+    }
+
+    @Override
+    public void skip() throws IOException {
+        header.clear();
+        reader.readFully(header);
+        reader.skip(header.getInt(20));
+    }
+}
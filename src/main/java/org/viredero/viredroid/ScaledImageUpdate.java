@@ -0,0 +1,79 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import java.nio.ByteBuffer;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Rgb image of reduced resolution covering width x height rectangle of the
+ * screen. Goes through the upscaler's scratch texture, so only
+ * scaledWidth x scaledHeight pixels are uploaded.
+ */
+public class ScaledImageUpdate extends SubImageUpdate {
+
+    private final Upscaler upscaler;
+    private final int scaledWidth;
+    private final int scaledHeight;
+
+    public ScaledImageUpdate(Upscaler upscaler, int texId, int width, int height
+                             , int xOffset, int yOffset, int scaledWidth
+                             , int scaledHeight, PooledBuffer bytes) {
+        super(texId, GLES20.GL_RGB, width, height, xOffset, yOffset, bytes);
+        this.upscaler = upscaler;
+        this.scaledWidth = scaledWidth;
+        this.scaledHeight = scaledHeight;
+    }
+
+    @Override
+    public void draw() {
+        // before pixel buffer object gets bound by the upload
+        upscaler.reserve(scaledWidth, scaledHeight);
+        super.draw();
+    }
+
+    @Override
+    protected void upload(int pboOffset) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, upscaler.getScratchTexId());
+        GLES30.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, scaledWidth, scaledHeight
+                               , GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, pboOffset);
+        blit();
+    }
+
+    @Override
+    protected void upload(ByteBuffer bytes) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, upscaler.getScratchTexId());
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, scaledWidth, scaledHeight
+                               , GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, bytes);
+        blit();
+    }
+
+    private void blit() {
+        upscaler.blit(scaledWidth, scaledHeight, getTexId()
+                      , getX(), getY(), getWidth(), getHeight());
+    }
+
+    @Override
+    public int getByteCount() {
+        return 3 * scaledWidth * scaledHeight;
+    }
+}
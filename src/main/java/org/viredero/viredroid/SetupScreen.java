@@ -22,6 +22,7 @@ package org.viredero.viredroid;
 
 import java.nio.ByteBuffer;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import java.util.Arrays;
 
 public class SetupScreen implements Update {
@@ -29,16 +30,32 @@ public class SetupScreen implements Update {
     private final int height;
     private final int screenTexId;
     private final int pointerTexId;
+    private final int screenFormat;
+    private final int screenType;
+    private final boolean swizzle;
+    private final int chromaTexId;
 
+    /**
+     * @param swizzle have texture reorder channels of decoded png pixels
+     *   (GLES 3.0 only)
+     * @param chromaTexId texture for half resolution chroma planes of yuv
+     *   screen, 0 if none
+     */
     public SetupScreen(int screenTexId, int pointerTexId, int width
-                       , int height) {
+                       , int height, int screenFormat, int screenType
+                       , boolean swizzle, int chromaTexId) {
+        this.screenFormat = screenFormat;
+        this.screenType = screenType;
+        this.swizzle = swizzle;
+        this.chromaTexId = chromaTexId;
         this.width = width;
         this.height = height;
         this.screenTexId = screenTexId;
         this.pointerTexId = pointerTexId;
     }
 
-    private void fillAndDraw(int texId, int format, int bytes_per_pix, byte value) {
+    private void fillAndDraw(int texId, int format, int type, int bytes_per_pix
+                             , byte value, int width, int height) {
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
  
         // Set filtering
@@ -53,12 +70,79 @@ public class SetupScreen implements Update {
         imageBuf.position(0);
         GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format
                             , width, height, 0, format
-                            , GLES20.GL_UNSIGNED_BYTE, imageBuf);
+                            , type, imageBuf);
     }
     
+    // compressed formats can't be filled byte by byte, gray ETC2 blocks
+    //   instead
+    private void fillAndDrawETC2(int texId) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        int size = ETC2ScreenUpdate.getByteCount(width, height);
+        ByteBuffer imageBuf = ByteBuffer.allocateDirect(size);
+        byte[] buf = imageBuf.array();
+        for (int i = 0; i < size; i += ETC2ScreenUpdate.BLOCK_SIZE) {
+            buf[i] = buf[i + 1] = buf[i + 2] = 0x22;
+        }
+        GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, screenFormat
+                                      , width, height, 0, size, imageBuf);
+    }
+
     @Override
     public void draw() {
-        fillAndDraw(screenTexId, GLES20.GL_RGB, 3, (byte)32);
-        fillAndDraw(pointerTexId, GLES20.GL_RGBA, 4, (byte)0);
+        if (screenFormat == GLES30.GL_COMPRESSED_RGB8_ETC2) {
+            fillAndDrawETC2(screenTexId);
+        } else {
+            fillAndDraw(screenTexId, screenFormat, screenType, getBytesPerPixel()
+                        , (byte)32, width, height);
+        }
+        if (swizzle) {
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                                   , GLES30.GL_TEXTURE_SWIZZLE_R, GLES30.GL_BLUE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                                   , GLES30.GL_TEXTURE_SWIZZLE_G, GLES30.GL_RED);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                                   , GLES30.GL_TEXTURE_SWIZZLE_B, GLES30.GL_GREEN);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                                   , GLES30.GL_TEXTURE_SWIZZLE_A, GLES30.GL_ONE);
+        }
+        if (chromaTexId != 0) {
+            // neutral chroma, leaves the screen gray
+            fillAndDraw(chromaTexId, GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE
+                        , 2, (byte)128, width / 2, height / 2);
+        }
+        // no cursor until host sends one: a single transparent pixel
+        fillAndDraw(pointerTexId, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 4
+                    , (byte)0, 1, 1);
+    }
+
+    @Override
+    public int getByteCount() {
+        if (screenFormat == GLES30.GL_COMPRESSED_RGB8_ETC2) {
+            return ETC2ScreenUpdate.getByteCount(width, height) + 4;
+        }
+        int chromaBytes = chromaTexId != 0 ? 2 * (width / 2) * (height / 2) : 0;
+        return getBytesPerPixel() * width * height + chromaBytes + 4;
+    }
+
+    private int getBytesPerPixel() {
+        if (screenType == GLES20.GL_UNSIGNED_SHORT_5_6_5) {
+            return 2;
+        }
+        switch (screenFormat) {
+        case GLES20.GL_RGBA:
+            return 4;
+        case GLES20.GL_LUMINANCE:
+            return 1;
+        default:
+            return 3;
+        }
+    }
+
+    @Override
+    public void release() {
     }
 }
@@ -22,18 +22,64 @@ package org.viredero.viredroid;
 
 import java.nio.ByteBuffer;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 
 public class SubImageUpdate implements Update {
     private final int texId;
     private final int format;
+    private final int type;
     private final int width;
     private final int height;
     private final int xOffset;
     private final int yOffset;
     private final ByteBuffer bytes;
+    private final PooledBuffer pooled;
+    // where pixels start in bytes (or pixel buffer object)
+    private final int offset;
 
     public SubImageUpdate(int texId, int format, int width, int height
                           , int xOffset, int yOffset, ByteBuffer bytes) {
+        this(texId, format, GLES20.GL_UNSIGNED_BYTE, width, height, xOffset, yOffset
+             , bytes, null, 0);
+    }
+
+    public SubImageUpdate(int texId, int format, int width, int height
+                          , int xOffset, int yOffset, PooledBuffer pooled) {
+        this(texId, format, GLES20.GL_UNSIGNED_BYTE, width, height, xOffset, yOffset
+             , pooled.getBuffer(), pooled, 0);
+    }
+
+    /**
+     * Update for pixels starting at offset of a buffer shared with other
+     * updates, each holding its own reference to it.
+     */
+    public SubImageUpdate(int texId, int format, int width, int height
+                          , int xOffset, int yOffset, PooledBuffer pooled
+                          , int offset) {
+        this(texId, format, GLES20.GL_UNSIGNED_BYTE, width, height, xOffset, yOffset
+             , pooled.getBuffer(), pooled, offset);
+    }
+
+    /**
+     * Same as above for pixels of type other than unsigned byte.
+     */
+    public SubImageUpdate(int texId, int format, int type, int width, int height
+                          , int xOffset, int yOffset, PooledBuffer pooled
+                          , int offset) {
+        this(texId, format, type, width, height, xOffset, yOffset
+             , pooled.getBuffer(), pooled, offset);
+    }
+
+    public SubImageUpdate(int texId, int format, int type, int width, int height
+                          , int xOffset, int yOffset, ByteBuffer bytes) {
+        this(texId, format, type, width, height, xOffset, yOffset, bytes, null, 0);
+    }
+
+    private SubImageUpdate(int texId, int format, int type, int width, int height
+                           , int xOffset, int yOffset, ByteBuffer bytes
+                           , PooledBuffer pooled, int offset) {
+        this.type = type;
+        this.offset = offset;
         this.texId = texId;
         this.format = format;
         this.width = width;
@@ -41,13 +87,87 @@ public class SubImageUpdate implements Update {
         this.xOffset = xOffset;
         this.yOffset = yOffset;
         this.bytes = bytes;
+        this.pooled = pooled;
     }
 
     @Override
     public void draw() {
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        if (pooled != null && pooled.getPbo() != 0) {
+            // pixels are in the pixel buffer object already, upload from there
+            pooled.unmap();
+            upload(offset);
+            GLES20.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            return;
+        }
+        bytes.position(offset);
+        upload(bytes);
+    }
+
+    // from pixel buffer object bound as GL_PIXEL_UNPACK_BUFFER
+    protected void upload(int pboOffset) {
+        GLES30.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, xOffset
+                               , yOffset, width, height, format
+                               , type, pboOffset);
+    }
+
+    protected void upload(ByteBuffer bytes) {
         GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, xOffset
                                , yOffset, width, height, format
-                               , GLES20.GL_UNSIGNED_BYTE, bytes);
+                               , type, bytes);
+    }
+
+    @Override
+    public int getByteCount() {
+        if (type == GLES20.GL_UNSIGNED_SHORT_5_6_5) {
+            return 2 * width * height;
+        }
+        switch (format) {
+        case GLES20.GL_RGB:
+            return 3 * width * height;
+        case GLES20.GL_LUMINANCE:
+            return width * height;
+        case GLES20.GL_LUMINANCE_ALPHA:
+            return 2 * width * height;
+        default:
+            return 4 * width * height;
+        }
+    }
+
+    public int getTexId() {
+        return texId;
+    }
+
+    public int getX() {
+        return xOffset;
+    }
+
+    public int getY() {
+        return yOffset;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Whether drawing this update overwrites every pixel the other one writes.
+     */
+    public boolean covers(SubImageUpdate other) {
+        return texId == other.texId
+            && xOffset <= other.xOffset && yOffset <= other.yOffset
+            && xOffset + width >= other.xOffset + other.width
+            && yOffset + height >= other.yOffset + other.height;
+    }
+
+    @Override
+    public void release() {
+        if (pooled != null) {
+            pooled.release();
+        }
     }
 }
@@ -22,4 +22,8 @@ package org.viredero.viredroid;
 
 public interface Update {
     void draw();
+    // roughly how many bytes draw() uploads, used to budget uploads per frame
+    int getByteCount();
+    // called once the update is drawn or dropped, frees buffers it holds
+    void release();
 }
@@ -0,0 +1,225 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Updates on their way from the pump to the GL thread. Image updates made
+ * obsolete by a newer one covering them are dropped before they are ever
+ * uploaded, whether on their own or part of a batch (MultiUpdate), so are
+ * pointer moves followed by a newer one. If the GL thread
+ * falls behind by more than capacity updates the oldest image update is
+ * dropped and its region is remembered as damaged until some newer update
+ * covers it or the pump takes it to have it redrawn.
+ */
+public class UpdateQueue {
+
+    private final int capacity;
+    private final List<Update> pending;
+    private final Map<Integer, Rect> damage = new HashMap<Integer, Rect>();
+
+    public UpdateQueue(int capacity) {
+        this.capacity = capacity;
+        this.pending = new ArrayList<Update>(capacity);
+    }
+
+    public synchronized void offer(Update u) {
+        if (u instanceof PointerUpdate && ((PointerUpdate) u).isMove()) {
+            // a pending move of the same cursor is of no use any more
+            for (int i = pending.size() - 1; i >= 0; i -= 1) {
+                Update older = pending.get(i);
+                if (older instanceof PointerUpdate) {
+                    if (((PointerUpdate) older).isMove()) {
+                        pending.set(i, u);
+                        return;
+                    }
+                    break; // cursor changes there, the move must stay
+                }
+            }
+        }
+        dropCovered(u);
+        // pointer updates are tiny and coalesced above, they don't push
+        //   pixels out
+        if (pending.size() >= capacity && ! dropSupersededMove()
+            && ! (u instanceof PointerUpdate)) {
+            dropOldestImage();
+        }
+        pending.add(u);
+    }
+
+    public synchronized boolean isFull() {
+        return pending.size() >= capacity;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Takes the oldest update if it is no more than maxBytes, null if it
+     * is bigger or there is none.
+     */
+    public synchronized Update poll(int maxBytes) {
+        if (pending.isEmpty() || pending.get(0).getByteCount() > maxBytes) {
+            return null;
+        }
+        return pending.remove(0);
+    }
+
+    /**
+     * Drops everything not uploaded yet, e.g. when GL context is recreated.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < pending.size(); i += 1) {
+            pending.get(i).release();
+        }
+        pending.clear();
+        damage.clear();
+    }
+
+    public synchronized boolean hasDamage() {
+        return ! damage.isEmpty();
+    }
+
+    /**
+     * Bounding box of the regions of given texture lost so far,
+     * null if none. Damage is forgotten once taken.
+     */
+    public synchronized Rect takeDamage(int texId) {
+        return damage.remove(texId);
+    }
+
+    /**
+     * Marks region of given texture as lost, e.g. if it was taken but
+     * couldn't be redrawn yet.
+     */
+    public synchronized void addDamage(int texId, Rect r) {
+        Rect d = damage.get(texId);
+        if (d == null) {
+            damage.put(texId, new Rect(r));
+        } else {
+            d.union(r);
+        }
+    }
+
+    // drops a pointer move some later pointer update moves the cursor
+    //   from anyway
+    private boolean dropSupersededMove() {
+        boolean later = false;
+        for (int i = pending.size() - 1; i >= 0; i -= 1) {
+            Update u = pending.get(i);
+            if (! (u instanceof PointerUpdate)) {
+                continue;
+            }
+            if (later && ((PointerUpdate) u).isMove()) {
+                pending.remove(i);
+                return true;
+            }
+            later = true;
+        }
+        return false;
+    }
+
+    // drops what every image update (or batch part) of newer overwrites
+    private void dropCovered(Update newer) {
+        if (newer instanceof SubImageUpdate) {
+            dropCovered((SubImageUpdate) newer);
+        } else if (newer instanceof MultiUpdate) {
+            for (Update part : ((MultiUpdate) newer).getParts()) {
+                dropCovered(part);
+            }
+        }
+    }
+
+    private void dropCovered(SubImageUpdate newer) {
+        for (int i = pending.size() - 1; i >= 0; i -= 1) {
+            Update older = pending.get(i);
+            if ((older instanceof SubImageUpdate && newer.covers((SubImageUpdate) older))
+                || (older instanceof MultiUpdate && ((MultiUpdate) older).dropCovered(newer))) {
+                pending.remove(i);
+                older.release();
+            }
+        }
+        repair(newer);
+    }
+
+    private void dropOldestImage() {
+        for (int i = 0; i < pending.size(); i += 1) {
+            Update u = pending.get(i);
+            if (hasImage(u)) {
+                pending.remove(i);
+                u.release();
+                addDamage(u);
+                return;
+            }
+        }
+        // nothing but pointer and such, those are cheap and must not be lost
+    }
+
+    private static boolean hasImage(Update u) {
+        if (u instanceof SubImageUpdate) {
+            return true;
+        }
+        if (u instanceof MultiUpdate) {
+            for (Update part : ((MultiUpdate) u).getParts()) {
+                if (hasImage(part)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addDamage(Update u) {
+        if (u instanceof SubImageUpdate) {
+            addDamage((SubImageUpdate) u);
+        } else if (u instanceof MultiUpdate) {
+            for (Update part : ((MultiUpdate) u).getParts()) {
+                addDamage(part);
+            }
+        }
+    }
+
+    private void addDamage(SubImageUpdate u) {
+        Rect r = new Rect(u.getX(), u.getY()
+                          , u.getX() + u.getWidth(), u.getY() + u.getHeight());
+        Log.w(ViredroidGLActivity.LOGTAG, "Update queue is full, dropped " + r);
+        addDamage(u.getTexId(), r);
+    }
+
+    private void repair(SubImageUpdate u) {
+        if (damage.isEmpty()) {
+            return;
+        }
+        Rect d = damage.get(u.getTexId());
+        if (d != null && u.getX() <= d.left && u.getY() <= d.top
+            && u.getX() + u.getWidth() >= d.right && u.getY() + u.getHeight() >= d.bottom) {
+            damage.remove(u.getTexId());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+/**
+ * Uploads updates on the GL thread once per frame, no more than byteBudget
+ * bytes or timeBudgetNanos of upload calls per frame. What does not fit
+ * stays in the queue for the next frame, in order, where newer updates
+ * may still make it obsolete. At least one update is uploaded every
+ * frame, however big it is.
+ */
+public class UploadScheduler {
+
+    private static final int DEFAULT_BYTE_BUDGET = 4 * 1024 * 1024;
+    private static final long DEFAULT_TIME_BUDGET_NS = 4000000; // 4ms
+
+    private int byteBudget = DEFAULT_BYTE_BUDGET;
+    private long timeBudgetNanos = DEFAULT_TIME_BUDGET_NS;
+
+    public void setBudget(int byteBudget, long timeBudgetNanos) {
+        this.byteBudget = byteBudget;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+    /**
+     * Uploads as much of what is queued as the budget allows. Must be
+     * called on GL thread.
+     */
+    public void onNewFrame(UpdateQueue queue) {
+        long start = System.nanoTime();
+        int bytes = 0;
+        while (bytes == 0 || System.nanoTime() - start <= timeBudgetNanos) {
+            Update u = queue.poll(bytes == 0 ? Integer.MAX_VALUE : byteBudget - bytes);
+            if (u == null) {
+                break;
+            }
+            bytes += u.getByteCount();
+            u.draw();
+            u.release();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Stretches low resolution images over the screen texture on GPU. Images
+ * go to a scratch texture first, then get blitted with linear filtering.
+ * Needs GLES 3.0, GL thread only.
+ */
+public class Upscaler {
+
+    private final int[] handles = new int[2];
+    private final int[] boundFbo = new int[1];
+    private int scratchTexId;
+    private int readFbo;
+    private int drawFbo;
+    private int scratchWidth;
+    private int scratchHeight;
+
+    // on surface creation, old GL objects are gone with the old context
+    public void init() {
+        GLES20.glGenTextures(1, handles, 0);
+        scratchTexId = handles[0];
+        GLES20.glGenFramebuffers(2, handles, 0);
+        readFbo = handles[0];
+        drawFbo = handles[1];
+        if (scratchTexId == 0 || readFbo == 0 || drawFbo == 0) {
+            throw new RuntimeException("Error creating upscaler");
+        }
+        scratchWidth = 0;
+        scratchHeight = 0;
+    }
+
+    /**
+     * Grows scratch texture to hold width x height pixels if needed and
+     * leaves it bound. Pixel unpack buffer must not be bound.
+     */
+    public void reserve(int width, int height) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, scratchTexId);
+        if (width <= scratchWidth && height <= scratchHeight) {
+            return;
+        }
+        scratchWidth = Math.max(width, scratchWidth);
+        scratchHeight = Math.max(height, scratchHeight);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB
+                            , scratchWidth, scratchHeight, 0, GLES20.GL_RGB
+                            , GLES20.GL_UNSIGNED_BYTE, null);
+    }
+
+    public int getScratchTexId() {
+        return scratchTexId;
+    }
+
+    /**
+     * Stretches width x height pixels at the corner of scratch texture
+     * over w x h rectangle at x, y of the screen texture.
+     */
+    public void blit(int width, int height, int screenTexId
+                     , int x, int y, int w, int h) {
+        GLES20.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, boundFbo, 0);
+        // scissor box of the last eye would clip the blit
+        boolean scissor = GLES20.glIsEnabled(GLES20.GL_SCISSOR_TEST);
+        if (scissor) {
+            GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        }
+        GLES20.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, readFbo);
+        GLES20.glFramebufferTexture2D(GLES30.GL_READ_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0
+                                      , GLES20.GL_TEXTURE_2D, scratchTexId, 0);
+        GLES20.glBindFramebuffer(GLES30.GL_DRAW_FRAMEBUFFER, drawFbo);
+        GLES20.glFramebufferTexture2D(GLES30.GL_DRAW_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0
+                                      , GLES20.GL_TEXTURE_2D, screenTexId, 0);
+        GLES30.glBlitFramebuffer(0, 0, width, height, x, y, x + w, y + h
+                                 , GLES20.GL_COLOR_BUFFER_BIT, GLES20.GL_LINEAR);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, boundFbo[0]);
+        if (scissor) {
+            GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+        }
+    }
+}
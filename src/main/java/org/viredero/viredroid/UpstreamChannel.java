@@ -0,0 +1,138 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Messages from client to host after init. Every one is framed as opcode
+ * byte, uint16 payload length and payload, so host may skip those it
+ * doesn't know. Writes happen on a thread of their own and never hold up
+ * the pump.
+ */
+public class UpstreamChannel implements Runnable {
+
+    // frames drawn, updates queued and image buffers in use since last one
+    public static final int STATUS_MSG = 1;
+    // uint32 image commands host may send in addition, see FlowControl
+    public static final int CREDIT_MSG = 2;
+    // int32 x and y of the screen pixel user looks at, -1 for both if user
+    //   looks away; host may send scaled images once it got one
+    public static final int GAZE_MSG = 3;
+    // int32 id of a cursor client doesn't have (any more), host is to send
+    //   its pixels again
+    public static final int CURSOR_MISS_MSG = 4;
+    // int32 x, y, width and height of a screen rectangle client has lost,
+    //   host is to send its pixels again
+    public static final int REPAINT_MSG = 5;
+
+    private static final int HEADER_SIZE = 3;
+    private static final int MAX_PAYLOAD = 0xFFFF;
+    // tells writer to stop once messages before it are written
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+
+    private final WritableByteChannel out;
+    private final BlockingQueue<ByteBuffer> messages;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public UpstreamChannel(WritableByteChannel out, int capacity) {
+        this.out = out;
+        this.messages = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this, "viredroid-upstream");
+        writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Frames payload (from position to limit) and queues it for sending.
+     * Returns false if too many messages are pending already.
+     */
+    public boolean send(int opcode, ByteBuffer payload) {
+        if (closed) {
+            return false;
+        }
+        int length = payload.remaining();
+        if (length > MAX_PAYLOAD) {
+            throw new RuntimeException("Upstream message too long: " + length);
+        }
+        ByteBuffer msg = ByteBuffer.allocate(HEADER_SIZE + length);
+        msg.put((byte)opcode);
+        msg.putShort((short)length);
+        msg.put(payload);
+        msg.flip();
+        if (! messages.offer(msg)) {
+            Log.w(ViredroidGLActivity.LOGTAG, "Upstream is congested, dropping message " + opcode);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                ByteBuffer msg = messages.take();
+                if (msg == CLOSE) {
+                    return;
+                }
+                while (msg.hasRemaining()) {
+                    out.write(msg);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            Log.w(ViredroidGLActivity.LOGTAG, "Upstream channel failed", e);
+        }
+    }
+
+    /**
+     * Stops writing, pending messages are dropped. A message being written
+     * is finished first, for a while at most. Channel itself belongs to
+     * whoever created it and stays open.
+     */
+    public void close() {
+        closed = true;
+        messages.clear();
+        while (! messages.offer(CLOSE)) {
+            messages.poll(); // a send slipped in meanwhile
+        }
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            Log.w(ViredroidGLActivity.LOGTAG, "Upstream writer is still busy, leaving it");
+        }
+    }
+}
@@ -25,21 +25,18 @@ import android.os.ParcelFileDescriptor;
 
 import java.lang.Runnable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.BufferedInputStream;
-import java.net.InetAddress;
-import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.nio.channels.WritableByteChannel;
 
 public class UsbCmdPump extends AbstractCmdPump {
 
+    // accessory reads must be multiples of the driver's bulk buffer size,
+    //   otherwise the rest of the USB transfer is silently dropped
+    private static final int BULK_READ_SIZE = 16384;
+
     private ParcelFileDescriptor fd;
-    public UsbCmdPump(BlockingQueue<Update> queue, ViredroidRenderer renderer
+    public UsbCmdPump(UpdateQueue queue, ViredroidRenderer renderer
                       , int screenTexDataHandle, int pointTexDataHandle
                       , ParcelFileDescriptor fd){
         super(queue, renderer, screenTexDataHandle, pointTexDataHandle);
@@ -47,14 +44,16 @@ public class UsbCmdPump extends AbstractCmdPump {
     }
 
     @Override
-    public InputStream createIS() throws IOException {
-        return new FixedReadBufferedInputStream(
-            new FileInputStream(fd.getFileDescriptor()), 16384);
+    public CmdReader createReader() throws IOException {
+        FileInputStream in = new FileInputStream(fd.getFileDescriptor());
+        // leftovers of a previous session would desync commands
+        in.skip(in.available());
+        return new CmdReader(in.getChannel(), BULK_READ_SIZE);
     }
 
     @Override
-    public OutputStream createOS() throws IOException {
-        return new FileOutputStream(fd.getFileDescriptor());
+    public WritableByteChannel createOutChannel() throws IOException {
+        return new FileOutputStream(fd.getFileDescriptor()).getChannel();
     }
     
 }
@@ -0,0 +1,76 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.media.MediaCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Image command of video screen formats: a chunk of H.264/HEVC stream.
+ * Frames reach the screen through the decoder's surface, so no update is
+ * produced here.
+ */
+public class VideoCmd implements Command {
+
+    // flags (int32), presentation time in us (int64), stream chunk size (int32)
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAG_CODEC_CONFIG = 1;
+    private static final int FLAG_KEY_FRAME = 2;
+
+    private final CmdReader reader;
+    private final VideoDecoder decoder;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    public VideoCmd(CmdReader reader, VideoDecoder decoder) {
+        this.reader = reader;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public Update exec() throws IOException {
+        header.clear();
+        reader.readFully(header);
+        int flags = header.getInt(0);
+        long ptsUs = header.getLong(4);
+        int size = header.getInt(12);
+        if (size <= 0) {
+            throw new RuntimeException("video chunk size <= 0");
+        }
+        int codecFlags = 0;
+        if ((flags & FLAG_CODEC_CONFIG) != 0) {
+            codecFlags |= MediaCodec.BUFFER_FLAG_CODEC_CONFIG;
+        }
+        if ((flags & FLAG_KEY_FRAME) != 0) {
+            codecFlags |= MediaCodec.BUFFER_FLAG_KEY_FRAME;
+        }
+        decoder.queue(reader, size, ptsUs, codecFlags);
+        return null;
+    }
+
+    @Override
+    public void skip() throws IOException {
+        header.clear();
+        reader.readFully(header);
+        reader.skip(header.getInt(12));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Android app for viredero — viredroid
+ * Copyright (c) 2015 Leonid Movshovich <event.riga@gmail.com>
+ *
+ *
+ * viredero is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * viredero is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with viredero; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package org.viredero.viredroid;
+
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds the video stream into a MediaCodec decoder rendering into the
+ * renderer's SurfaceTexture. Input is queued by the pump thread, decoded
+ * frames are released to the surface by a separate thread so the pump
+ * never waits for the decoder's latency.
+ */
+public class VideoDecoder implements Runnable {
+
+    public static final String MIME_AVC = MediaFormat.MIMETYPE_VIDEO_AVC;
+    public static final String MIME_HEVC = MediaFormat.MIMETYPE_VIDEO_HEVC;
+
+    private static final long INPUT_TIMEOUT_US = 10000;
+    private static final long OUTPUT_TIMEOUT_US = 10000;
+
+    private final MediaCodec codec;
+    private final Surface surface;
+    private final Thread output;
+
+    public VideoDecoder(String mime, int width, int height
+                        , SurfaceTexture surfaceTexture, boolean preferSoftware) throws IOException {
+        String name = findDecoder(mime, preferSoftware);
+        if (name == null) {
+            throw new IOException("No decoder for " + mime);
+        }
+        Log.i(ViredroidGLActivity.LOGTAG, "Decoding " + mime + " with " + name);
+        surfaceTexture.setDefaultBufferSize(width, height);
+        surface = new Surface(surfaceTexture);
+        codec = MediaCodec.createByCodecName(name);
+        codec.configure(MediaFormat.createVideoFormat(mime, width, height), surface, null, 0);
+        codec.start();
+        output = new Thread(this, "viredroid-decoder");
+        output.start();
+    }
+
+    /**
+     * Software decoders are there in the emulator too, hardware ones are
+     * preferred unless asked otherwise.
+     */
+    public static String findDecoder(String mime, boolean preferSoftware) {
+        String found = null;
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder() || ! supports(info, mime)) {
+                continue;
+            }
+            if (isSoftware(info.getName()) == preferSoftware) {
+                return info.getName();
+            }
+            if (found == null) {
+                found = info.getName();
+            }
+        }
+        return found;
+    }
+
+    private static boolean supports(MediaCodecInfo info, String mime) {
+        for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(mime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSoftware(String name) {
+        return name.startsWith("OMX.google.") || name.startsWith("c2.android.");
+    }
+
+    /**
+     * Reads size bytes of stream straight into the codec's input buffer.
+     */
+    public void queue(CmdReader reader, int size, long ptsUs, int flags) throws IOException {
+        int idx;
+        while ((idx = codec.dequeueInputBuffer(INPUT_TIMEOUT_US)) < 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for decoder");
+            }
+        }
+        ByteBuffer in = codec.getInputBuffer(idx);
+        in.clear();
+        if (size > in.capacity()) {
+            codec.queueInputBuffer(idx, 0, 0, ptsUs, 0);
+            throw new RuntimeException("video frame exceeds decoder input buffer");
+        }
+        in.limit(size);
+        reader.readFully(in);
+        codec.queueInputBuffer(idx, 0, size, ptsUs, flags);
+    }
+
+    @Override
+    public void run() {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        try {
+            while (! Thread.currentThread().isInterrupted()) {
+                int idx = codec.dequeueOutputBuffer(info, OUTPUT_TIMEOUT_US);
+                if (idx >= 0) {
+                    codec.releaseOutputBuffer(idx, info.size > 0);
+                }
+            }
+        } catch (IllegalStateException e) {
+            Log.w(ViredroidGLActivity.LOGTAG, "Decoder output stopped", e);
+        }
+    }
+
+    public void release() {
+        output.interrupt();
+        while (output.isAlive()) {
+            try {
+                output.join();
+            } catch (InterruptedException ie) {
+            }
+        }
+        codec.stop();
+        codec.release();
+        surface.release();
+    }
+}
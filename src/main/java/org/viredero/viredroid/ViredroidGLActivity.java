@@ -32,6 +32,7 @@ import android.opengl.GLU;
 import android.opengl.Matrix;
 import android.opengl.GLUtils;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
@@ -41,6 +42,7 @@ import android.hardware.usb.UsbManager;
 import android.hardware.usb.UsbAccessory;
 import android.widget.TextView;
 import android.view.View;
+import android.view.WindowManager;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -52,22 +54,39 @@ import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.lang.StringBuilder;
 
 import javax.microedition.khronos.egl.EGLConfig;
 
-public class ViredroidGLActivity extends GvrActivity implements GvrView.StereoRenderer {
+public class ViredroidGLActivity extends GvrActivity implements GvrView.Renderer {
 
     public static final String LOGTAG = "viredroid";
+    // host and port of a viredero peer to use over TCP when USB is not connected
+    public static final String EXTRA_HOST = "org.viredero.viredroid.HOST";
+    public static final String EXTRA_PORT = "org.viredero.viredroid.PORT";
+    // false to upload textures from client memory even if pixel buffer objects are there
+    public static final String EXTRA_PBO = "org.viredero.viredroid.PBO";
+    // true to decode video with software codec, e.g. in the emulator
+    public static final String EXTRA_SW_DECODER = "org.viredero.viredroid.SW_DECODER";
+    // how many times a second to tell host where user looks, 0 not to
+    public static final String EXTRA_GAZE_HZ = "org.viredero.viredroid.GAZE_HZ";
+    private static final int DEFAULT_GAZE_HZ = 10;
+    // false to draw eyes one by one even if both could be drawn at once
+    public static final String EXTRA_SINGLE_PASS = "org.viredero.viredroid.SINGLE_PASS";
+    // false to keep render resolution even if frames don't make it in time
+    public static final String EXTRA_DYNAMIC_RESOLUTION = "org.viredero.viredroid.DYNAMIC_RESOLUTION";
 
     private HeadTransform lastHeadXform;
     
     private Vibrator vibrator;
 
-    private BlockingQueue<Update> imageQueue;
+    private UpdateQueue imageQueue;
+    private final UploadScheduler uploadScheduler = new UploadScheduler();
     private Thread cmdPump;
+    private AbstractCmdPump pump;
+    private long gazeIntervalMs;
+    private long lastGaze;
+    private final float[] gaze = new float[2];
     private ParcelFileDescriptor usbFd;
     private ViredroidRenderer renderer;
 
@@ -82,6 +101,13 @@ public class ViredroidGLActivity extends GvrActivity implements GvrView.StereoRe
         setGvrView(cardboardView);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
         renderer = new ViredroidRenderer(this);
+        renderer.setUsePbo(getIntent().getBooleanExtra(EXTRA_PBO, true));
+        renderer.setSinglePass(getIntent().getBooleanExtra(EXTRA_SINGLE_PASS, true));
+        WindowManager windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
+        renderer.setDynamicResolution(getIntent().getBooleanExtra(EXTRA_DYNAMIC_RESOLUTION, true)
+                                      , windowManager.getDefaultDisplay().getRefreshRate());
+        int gazeHz = getIntent().getIntExtra(EXTRA_GAZE_HZ, DEFAULT_GAZE_HZ);
+        gazeIntervalMs = gazeHz > 0 ? 1000 / gazeHz : 0;
     }
 
     private ParcelFileDescriptor getUsbFd(UsbManager manager) throws SecurityException {
@@ -104,8 +130,12 @@ public class ViredroidGLActivity extends GvrActivity implements GvrView.StereoRe
         renderer.onSurfaceCreated(config);
 
         terminateCmdPump();
+        pump = null;
 
-        imageQueue = new ArrayBlockingQueue<Update>(10);
+        if (imageQueue != null) {
+            imageQueue.clear();
+        }
+        imageQueue = new UpdateQueue(10);
 
         UsbManager manager = (UsbManager)getSystemService(Context.USB_SERVICE);
         try {
@@ -114,15 +144,29 @@ public class ViredroidGLActivity extends GvrActivity implements GvrView.StereoRe
             Log.w(LOGTAG, "Restarting due to security exception");
             return;
         }
-        if (usbFd == null) {
+        AbstractCmdPump r;
+        String host = getIntent().getStringExtra(EXTRA_HOST);
+        if (usbFd != null) {
+            Log.d(LOGTAG, "got usb fd!");
+            r = new UsbCmdPump(imageQueue, renderer, renderer.getScreenTexDataHandle()
+                               , renderer.getPointerTexDataHandle(), usbFd);
+        } else if (host != null) {
+            int port = getIntent().getIntExtra(EXTRA_PORT, -1);
+            if (port <= 0 || port > 0xFFFF) {
+                Log.w(LOGTAG, "No valid port to connect to " + host + ", got " + port);
+                return;
+            }
+            Log.d(LOGTAG, "connecting to " + host + ":" + port);
+            r = new NetCmdPump(imageQueue, renderer, renderer.getScreenTexDataHandle()
+                               , renderer.getPointerTexDataHandle(), host, port);
+        } else {
             Log.w(LOGTAG, "USB not yet connected! Please connect usb and come back");
             return;
         }
+        r.setPreferSoftwareDecoder(getIntent().getBooleanExtra(EXTRA_SW_DECODER, false));
         TextView textView = (TextView) findViewById(R.id.text_view);
         textView.setVisibility(View.INVISIBLE);
-        Log.d(LOGTAG, "got usb fd!");
-        Runnable r = new UsbCmdPump(imageQueue, renderer, renderer.getScreenTexDataHandle()
-                                    , renderer.getPointerTexDataHandle(), usbFd);
+        pump = r;
         cmdPump = new Thread(r);
         cmdPump.start();
     }
@@ -145,18 +189,27 @@ public class ViredroidGLActivity extends GvrActivity implements GvrView.StereoRe
     }
 
     @Override
-    public void onNewFrame(HeadTransform headTransform) {
+    public void onDrawFrame(HeadTransform headTransform, Eye leftEye, Eye rightEye) {
         lastHeadXform = headTransform;
+        uploadScheduler.onNewFrame(imageQueue);
+        renderer.onNewFrame();
+        sendGaze(headTransform);
+        renderer.onDrawFrame(leftEye, rightEye);
+        if (cmdPump != null && !cmdPump.isAlive()) {
+            finish();
+        }
     }
 
-    @Override
-    public void onDrawEye(Eye eye) {
-        List<Update> updates = new ArrayList<Update>(imageQueue.size());
-        imageQueue.drainTo(updates);
-        renderer.onDrawEye(eye, updates);
-        if (!cmdPump.isAlive()) {
-            finish();
+    private void sendGaze(HeadTransform headTransform) {
+        if (pump == null || gazeIntervalMs <= 0) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (now - lastGaze < gazeIntervalMs) {
+            return;
         }
+        lastGaze = now;
+        pump.sendGaze(renderer.getGazePoint(headTransform, gaze) ? gaze : null);
     }
 
     @Override
@@ -24,9 +24,11 @@ import com.google.vr.sdk.base.GvrActivity;
 import com.google.vr.sdk.base.GvrView;
 import com.google.vr.sdk.base.Eye;
 import com.google.vr.sdk.base.HeadTransform;
+import com.google.vr.sdk.base.Viewport;
 
 import android.content.Context;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.opengl.GLU;
 import android.opengl.Matrix;
 import android.opengl.GLUtils;
@@ -36,6 +38,8 @@ import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES11Ext;
 import android.hardware.usb.UsbManager;
 import android.hardware.usb.UsbAccessory;
 
@@ -44,6 +48,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.nio.Buffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
@@ -120,6 +125,22 @@ public class ViredroidRenderer {
     private ShortBuffer screenIndices;
     private FloatBuffer screenTextures;
     private int screenIndicesSize;
+    // meshes in GPU memory, uploaded once per surface
+    private int screenVertexBuffer;
+    private int screenTexBuffer;
+    private int screenIndexBuffer;
+    private int floorVertexBuffer;
+    private int floorNormalBuffer;
+    // vertex array objects (GLES 3.0), 0 if arrays are set up on every draw
+    private int screenVao;
+    private int floorVao;
+    // x, z and texture u of every vertical slice of the screen, for gaze
+    private final float[] sliceX = new float[SCREEN_SLICES];
+    private final float[] sliceZ = new float[SCREEN_SLICES];
+    private final float[] sliceU = new float[SCREEN_SLICES];
+    private final float[] screenInverse = new float[16];
+    private final float[] gazeRay = new float[8];
+    private final float[] gazeRayModel = new float[8];
 
     private int screenProgram;
     private int floorProgram;
@@ -129,9 +150,38 @@ public class ViredroidRenderer {
     private int screenModelViewProjectionParam;
     private int screenTexUnihandle;
     private int pointTexUnihandle;
+    private int pointRectParam;
+    private int pointShapeParam;
+    private int chromaTexUnihandle;
+    private int screenYuvParam;
+
+    private int videoProgram;
+    private int videoModelViewProjectionParam;
+    private int videoTexUnihandle;
+    private int videoPointTexUnihandle;
+    private int videoPointRectParam;
+    private int videoPointShapeParam;
+    private int videoTexMatrixParam;
+    private int videoTexDataHandle;
+    private SurfaceTexture videoTexture;
+    private final float[] videoTexMatrix = new float[16];
+    private volatile boolean videoFrameAvailable;
+    private volatile boolean videoMode;
  
     private int screenTexDataHandle;
     private int pointerTexDataHandle;
+    // corner of the cursor in screen texture coordinates and how many
+    //   times smaller than the screen it is, GL thread only
+    private final float[] pointerRect = new float[4];
+    // shapes named by host live in slots of cursor atlas, see CursorCache
+    private int cursorAtlasTexDataHandle;
+    // texture the cursor is in and the part of it it takes, GL thread only
+    private int pointerShapeTexId;
+    private final float[] pointerShape = new float[4];
+    private int chromaTexDataHandle;
+    private volatile boolean yuvMode;
+    // written by GL thread only
+    private volatile int frameCount;
 
     private int floorPositionParam;
     private int floorNormalParam;
@@ -141,8 +191,51 @@ public class ViredroidRenderer {
     private int floorLightPosParam;
     private int floorColorUParam;
 
+    // programs drawing both eyes in one instanced draw (GLES 3.0), see
+    //   stereo_vertex; 0 if eyes are drawn one by one
+    private boolean singlePass = true;
+    private int stereoScreenProgram;
+    private int stereoScreenMvpParam;
+    private int stereoScreenTexUnihandle;
+    private int stereoPointTexUnihandle;
+    private int stereoPointRectParam;
+    private int stereoPointShapeParam;
+    private int stereoChromaTexUnihandle;
+    private int stereoScreenYuvParam;
+    private int stereoScreenEyeViewportParam;
+    private int stereoFloorProgram;
+    private int stereoFloorModelParam;
+    private int stereoFloorModelViewParam;
+    private int stereoFloorMvpParam;
+    private int stereoFloorLightPosParam;
+    private int stereoFloorColorUParam;
+    private int stereoFloorEyeViewportParam;
+    // per eye uniforms, left eye first
+    private final float[] eyeViewports = new float[8];
+    private final float[] stereoLightPos = new float[6];
+    private final float[] stereoFloorModelView = new float[32];
+    private final float[] stereoFloorMvp = new float[32];
+    private final float[] stereoScreenMvp = new float[32];
+
+    // scene goes to a smaller offscreen target when frames take too long,
+    //   null without GLES 3.0 or if disabled
+    private boolean dynamicResolution = true;
+    private float refreshRate = 60f;
+    private FrameTimer frameTimer;
+    private ResolutionGovernor governor;
+    private OffscreenTarget offscreen;
+    private final int[] boundFbo = new int[1];
+    // where eyes are drawn in the current target, x, y, width and height
+    //   of the left one then of the right one
+    private final int[] eyeRects = new int[8];
+
     private ViredroidGLActivity activity;
 
+    private boolean usePbo = true;
+    private boolean gles3;
+    private volatile PboPool pboPool;
+    private Upscaler upscaler;
+
     public ViredroidRenderer(ViredroidGLActivity activity) {
         this.activity = activity;
     }
@@ -159,6 +252,11 @@ public class ViredroidRenderer {
     public void onSurfaceCreated(EGLConfig config) {
         Log.i(ViredroidGLActivity.LOGTAG, "Creating scene");
         GLES20.glClearColor(0.1f, 0.1f, 0.1f, 0.5f);
+        String glVersion = GLES20.glGetString(GLES20.GL_VERSION);
+        gles3 = glVersion != null && glVersion.startsWith("OpenGL ES 3");
+        pboPool = null;
+        upscaler = null;
+        Log.i(ViredroidGLActivity.LOGTAG, "GL version: " + glVersion);
         fillScreenCoords();
         // make a floor
         ByteBuffer bbFloorVertices = ByteBuffer.allocateDirect(FLOOR_COORDS.length * 4);
@@ -173,10 +271,13 @@ public class ViredroidRenderer {
         floorNormals.put(FLOOR_NORMALS);
         floorNormals.position(0);
 
-        int floorVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.light_vertex);
-        int screenVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.screen_vertex);
-        int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.grid_fragment);
-        int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER
+        int floorVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.mono_vertex
+                                             , R.raw.light_vertex);
+        int screenVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.mono_vertex
+                                              , R.raw.screen_vertex);
+        int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.mono_fragment
+                                      , R.raw.grid_fragment);
+        int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.mono_fragment
                                              , R.raw.passthrough_fragment);
         screenProgram = GLES20.glCreateProgram();
         GLES20.glAttachShader(screenProgram, screenVertexShader);
@@ -186,6 +287,33 @@ public class ViredroidRenderer {
 
         screenTexDataHandle = newTexture();
         pointerTexDataHandle = newTexture();
+        // cursor may have any size, which takes clamping in GLES 2.0
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pointerTexDataHandle);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        hidePointer();
+        cursorAtlasTexDataHandle = newTexture();
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, cursorAtlasTexDataHandle);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D
+                               , GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA
+                            , CursorCache.ATLAS_SIZE, CursorCache.ATLAS_SIZE, 0
+                            , GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        setPointerShape(pointerTexDataHandle, 0f, 0f, 1f, 1f);
+        chromaTexDataHandle = newTexture();
+        yuvMode = false;
+        if (gles3) {
+            upscaler = new Upscaler();
+            upscaler.init();
+        }
         checkGLError();
 
         screenPositionParam = GLES20.glGetAttribLocation(screenProgram, "a_Position");
@@ -194,12 +322,15 @@ public class ViredroidRenderer {
         screenModelViewProjectionParam = GLES20.glGetUniformLocation(screenProgram, "u_MVP");
         screenTexUnihandle = GLES20.glGetUniformLocation(screenProgram, "u_TexScreen");
         pointTexUnihandle = GLES20.glGetUniformLocation(screenProgram, "u_TexPointer");
-
-        GLES20.glEnableVertexAttribArray(screenPositionParam);
-        GLES20.glEnableVertexAttribArray(screenTexParam);
+        pointRectParam = GLES20.glGetUniformLocation(screenProgram, "u_PointerRect");
+        pointShapeParam = GLES20.glGetUniformLocation(screenProgram, "u_PointerShape");
+        chromaTexUnihandle = GLES20.glGetUniformLocation(screenProgram, "u_TexChroma");
+        screenYuvParam = GLES20.glGetUniformLocation(screenProgram, "u_Yuv");
 
         checkGLError();
 
+        createVideoProgram(screenVertexShader);
+
         floorProgram = GLES20.glCreateProgram();
         GLES20.glAttachShader(floorProgram, floorVertexShader);
         GLES20.glAttachShader(floorProgram, gridShader);
@@ -217,9 +348,32 @@ public class ViredroidRenderer {
         floorPositionParam = GLES20.glGetAttribLocation(floorProgram, "a_Position");
         floorNormalParam = GLES20.glGetAttribLocation(floorProgram, "a_Normal");
 
-        GLES20.glEnableVertexAttribArray(floorPositionParam);
-        GLES20.glEnableVertexAttribArray(floorNormalParam);
-
+        stereoScreenProgram = 0;
+        stereoFloorProgram = 0;
+        if (gles3 && singlePass) {
+            try {
+                createStereoPrograms();
+            } catch (RuntimeException e) {
+                Log.w(ViredroidGLActivity.LOGTAG, "Drawing eyes one by one", e);
+                stereoScreenProgram = 0;
+                stereoFloorProgram = 0;
+            }
+        }
+        createMeshBuffers();
+        frameTimer = null;
+        governor = null;
+        offscreen = null;
+        if (gles3 && dynamicResolution) {
+            boolean gpuTimer = FrameTimer.isGpuTimerSupported(
+                GLES20.glGetString(GLES20.GL_EXTENSIONS));
+            Log.i(ViredroidGLActivity.LOGTAG, "Scaling render resolution by "
+                  + (gpuTimer ? "GPU" : "CPU") + " frame times");
+            frameTimer = new FrameTimer(gpuTimer);
+            frameTimer.init();
+            governor = new ResolutionGovernor(refreshRate, gpuTimer);
+            offscreen = new OffscreenTarget();
+            offscreen.init();
+        }
         checkGLError();
 
         
@@ -238,6 +392,170 @@ public class ViredroidRenderer {
     }
     
 
+    // same shaders with stereo preambles; attribute locations are those of
+    //   mono programs, so the same vertex arrays serve both
+    private void createStereoPrograms() {
+        int screenVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.stereo_vertex
+                                              , R.raw.screen_vertex);
+        int passthroughShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.stereo_fragment
+                                             , R.raw.passthrough_fragment);
+        int screen = newProgram(screenVertexShader, passthroughShader);
+        GLES20.glBindAttribLocation(screen, screenPositionParam, "a_Position");
+        GLES20.glBindAttribLocation(screen, screenTexParam, "a_TexCoord");
+        linkProgram(screen);
+        stereoScreenMvpParam = GLES20.glGetUniformLocation(screen, "u_MVP");
+        stereoScreenTexUnihandle = GLES20.glGetUniformLocation(screen, "u_TexScreen");
+        stereoPointTexUnihandle = GLES20.glGetUniformLocation(screen, "u_TexPointer");
+        stereoPointRectParam = GLES20.glGetUniformLocation(screen, "u_PointerRect");
+        stereoPointShapeParam = GLES20.glGetUniformLocation(screen, "u_PointerShape");
+        stereoChromaTexUnihandle = GLES20.glGetUniformLocation(screen, "u_TexChroma");
+        stereoScreenYuvParam = GLES20.glGetUniformLocation(screen, "u_Yuv");
+        stereoScreenEyeViewportParam = GLES20.glGetUniformLocation(screen, "u_EyeViewport");
+
+        int floorVertexShader = loadGLShader(GLES20.GL_VERTEX_SHADER, R.raw.stereo_vertex
+                                             , R.raw.light_vertex);
+        int gridShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.stereo_fragment
+                                      , R.raw.grid_fragment);
+        int floor = newProgram(floorVertexShader, gridShader);
+        GLES20.glBindAttribLocation(floor, floorPositionParam, "a_Position");
+        GLES20.glBindAttribLocation(floor, floorNormalParam, "a_Normal");
+        linkProgram(floor);
+        stereoFloorModelParam = GLES20.glGetUniformLocation(floor, "u_Model");
+        stereoFloorModelViewParam = GLES20.glGetUniformLocation(floor, "u_MVMatrix");
+        stereoFloorMvpParam = GLES20.glGetUniformLocation(floor, "u_MVP");
+        stereoFloorLightPosParam = GLES20.glGetUniformLocation(floor, "u_LightPos");
+        stereoFloorColorUParam = GLES20.glGetUniformLocation(floor, "u_Color");
+        stereoFloorEyeViewportParam = GLES20.glGetUniformLocation(floor, "u_EyeViewport");
+        checkGLError();
+        stereoScreenProgram = screen;
+        stereoFloorProgram = floor;
+        Log.i(ViredroidGLActivity.LOGTAG, "Drawing both eyes in one pass");
+    }
+
+    private int newProgram(int vertexShader, int fragmentShader) {
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        return program;
+    }
+
+    private void linkProgram(int program) {
+        GLES20.glLinkProgram(program);
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            throw new RuntimeException("Error linking program: "
+                                       + GLES20.glGetProgramInfoLog(program));
+        }
+    }
+
+    // meshes never change, so they go to GPU memory once; with vertex array
+    //   objects attribute setup is done once as well
+    private void createMeshBuffers() {
+        int[] handles = new int[5];
+        GLES20.glGenBuffers(5, handles, 0);
+        screenVertexBuffer = handles[0];
+        screenTexBuffer = handles[1];
+        screenIndexBuffer = handles[2];
+        floorVertexBuffer = handles[3];
+        floorNormalBuffer = handles[4];
+        uploadBuffer(GLES20.GL_ARRAY_BUFFER, screenVertexBuffer, screenVertices
+                     , screenVertices.capacity() * BYTES_PER_FLOAT);
+        uploadBuffer(GLES20.GL_ARRAY_BUFFER, screenTexBuffer, screenTextures
+                     , screenTextures.capacity() * BYTES_PER_FLOAT);
+        uploadBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, screenIndexBuffer, screenIndices
+                     , screenIndicesSize * BYTES_PER_SHORT);
+        uploadBuffer(GLES20.GL_ARRAY_BUFFER, floorVertexBuffer, floorVertices
+                     , floorVertices.capacity() * BYTES_PER_FLOAT);
+        uploadBuffer(GLES20.GL_ARRAY_BUFFER, floorNormalBuffer, floorNormals
+                     , floorNormals.capacity() * BYTES_PER_FLOAT);
+        screenVao = 0;
+        floorVao = 0;
+        if (gles3) {
+            GLES30.glGenVertexArrays(2, handles, 0);
+            screenVao = handles[0];
+            floorVao = handles[1];
+            GLES30.glBindVertexArray(screenVao);
+            bindScreenArrays();
+            GLES30.glBindVertexArray(floorVao);
+            bindFloorArrays();
+            GLES30.glBindVertexArray(0);
+        }
+        unbindArrays();
+    }
+
+    private void uploadBuffer(int target, int buffer, Buffer data, int size) {
+        GLES20.glBindBuffer(target, buffer);
+        GLES20.glBufferData(target, size, data, GLES20.GL_STATIC_DRAW);
+    }
+
+    // video program has the same attribute locations, so these serve both
+    private void bindScreenArrays() {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, screenVertexBuffer);
+        GLES20.glEnableVertexAttribArray(screenPositionParam);
+        GLES20.glVertexAttribPointer(
+            screenPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, screenTexBuffer);
+        GLES20.glEnableVertexAttribArray(screenTexParam);
+        GLES20.glVertexAttribPointer(
+            screenTexParam, COORDS_PER_TEXTURE, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, screenIndexBuffer);
+    }
+
+    private void bindFloorArrays() {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorVertexBuffer);
+        GLES20.glEnableVertexAttribArray(floorPositionParam);
+        GLES20.glVertexAttribPointer(
+            floorPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, floorNormalBuffer);
+        GLES20.glEnableVertexAttribArray(floorNormalParam);
+        GLES20.glVertexAttribPointer(floorNormalParam, 3, GLES20.GL_FLOAT, false, 0, 0);
+    }
+
+    // client memory arrays would be taken for offsets otherwise
+    private void unbindArrays() {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    private void createVideoProgram(int screenVertexShader) {
+        int videoShader = loadGLShader(GLES20.GL_FRAGMENT_SHADER, R.raw.mono_fragment
+                                       , R.raw.video_fragment);
+        videoProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(videoProgram, screenVertexShader);
+        GLES20.glAttachShader(videoProgram, videoShader);
+        // same attribute locations as screen program so the same arrays serve both
+        GLES20.glBindAttribLocation(videoProgram, screenPositionParam, "a_Position");
+        GLES20.glBindAttribLocation(videoProgram, screenTexParam, "a_TexCoord");
+        GLES20.glLinkProgram(videoProgram);
+
+        videoModelViewProjectionParam = GLES20.glGetUniformLocation(videoProgram, "u_MVP");
+        videoTexUnihandle = GLES20.glGetUniformLocation(videoProgram, "u_TexScreen");
+        videoPointTexUnihandle = GLES20.glGetUniformLocation(videoProgram, "u_TexPointer");
+        videoPointRectParam = GLES20.glGetUniformLocation(videoProgram, "u_PointerRect");
+        videoPointShapeParam = GLES20.glGetUniformLocation(videoProgram, "u_PointerShape");
+        videoTexMatrixParam = GLES20.glGetUniformLocation(videoProgram, "u_TexMatrix");
+
+        videoTexDataHandle = newTexture();
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, videoTexDataHandle);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES
+                               , GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES
+                               , GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES
+                               , GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES
+                               , GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        if (videoTexture != null) {
+            videoTexture.release();
+        }
+        videoTexture = new SurfaceTexture(videoTexDataHandle);
+        videoTexture.setOnFrameAvailableListener(st -> videoFrameAvailable = true);
+        Matrix.setIdentityM(videoTexMatrix, 0);
+        videoMode = false;
+        checkGLError();
+    }
+
     private void fillScreenCoords() {
         screenVertices = ByteBuffer.allocateDirect(
             SCREEN_STACKS * SCREEN_SLICES * COORDS_PER_VERTEX * BYTES_PER_FLOAT)
@@ -304,6 +622,11 @@ public class ViredroidRenderer {
                 }
             }
         }
+        System.arraycopy(xs, 0, sliceX, 0, SCREEN_SLICES);
+        System.arraycopy(zs, 0, sliceZ, 0, SCREEN_SLICES);
+        for (int j = 0; j < SCREEN_SLICES; j += 1) {
+            sliceU[j] = screenTextures.get(j * 2);
+        }
         screenIndicesSize = screenIndices.position();
         screenIndices.position(0);
         screenVertices.position(0);
@@ -322,7 +645,118 @@ public class ViredroidRenderer {
         return textureHandle[0];
     }
 
-    public void onDrawEye(Eye eye, List<Update> updates) {
+    /**
+     * Draws both eyes in one pass if possible, one by one otherwise.
+     * rightEye is null if there is only one.
+     */
+    public void onDrawFrame(Eye leftEye, Eye rightEye) {
+        GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+        if (frameTimer != null) {
+            long nanos = frameTimer.begin();
+            if (nanos > 0) {
+                governor.onFrameTime(nanos);
+            }
+        }
+        // the part of the target both eyes take
+        Viewport left = leftEye.getViewport();
+        int x = left.x;
+        int y = left.y;
+        int width = left.width;
+        int height = left.height;
+        if (rightEye != null) {
+            Viewport right = rightEye.getViewport();
+            x = Math.min(left.x, right.x);
+            y = Math.min(left.y, right.y);
+            width = Math.max(left.x + left.width, right.x + right.width) - x;
+            height = Math.max(left.y + left.height, right.y + right.height) - y;
+        }
+        float scale = governor != null ? governor.getScale() : 1f;
+        boolean scaled = scale < 1f;
+        if (scaled) {
+            GLES20.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, boundFbo, 0);
+            offscreen.bind(Math.round(width * scale), Math.round(height * scale));
+            setEyeRect(0, left, x, y, scale);
+            if (rightEye != null) {
+                setEyeRect(1, rightEye.getViewport(), x, y, scale);
+            }
+        } else {
+            setEyeRect(0, left, 0, 0, 1f);
+            if (rightEye != null) {
+                setEyeRect(1, rightEye.getViewport(), 0, 0, 1f);
+            }
+        }
+
+        if (rightEye != null && stereoScreenProgram != 0 && ! videoMode) {
+            drawStereo(leftEye, rightEye);
+        } else {
+            drawEye(0, leftEye);
+            if (rightEye != null) {
+                drawEye(1, rightEye);
+            }
+        }
+
+        if (scaled) {
+            GLES20.glScissor(x, y, width, height);
+            offscreen.blitTo(boundFbo[0], x, y, width, height);
+            checkGLError();
+        }
+        // distortion pass and onFinishFrame get the whole target
+        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        if (frameTimer != null) {
+            frameTimer.end();
+        }
+    }
+
+    // viewport of the eye in the target, scaled around x, y of the frame
+    private void setEyeRect(int eye, Viewport v, int x, int y, float scale) {
+        eyeRects[4 * eye] = Math.round((v.x - x) * scale);
+        eyeRects[4 * eye + 1] = Math.round((v.y - y) * scale);
+        eyeRects[4 * eye + 2] = Math.round(v.width * scale);
+        eyeRects[4 * eye + 3] = Math.round(v.height * scale);
+    }
+
+    // both eyes share the viewport, each instance of a draw call is
+    //   squeezed into its eye's part of it by the stereo preamble
+    private void drawStereo(Eye leftEye, Eye rightEye) {
+        int x = Math.min(eyeRects[0], eyeRects[4]);
+        int y = Math.min(eyeRects[1], eyeRects[5]);
+        int width = Math.max(eyeRects[0] + eyeRects[2], eyeRects[4] + eyeRects[6]) - x;
+        int height = Math.max(eyeRects[1] + eyeRects[3], eyeRects[5] + eyeRects[7]) - y;
+        GLES20.glViewport(x, y, width, height);
+        GLES20.glScissor(x, y, width, height);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        checkGLError();
+
+        setEyeUniforms(0, leftEye, x, y, width, height);
+        setEyeUniforms(1, rightEye, x, y, width, height);
+        drawFloor(true);
+        drawScreen(true);
+    }
+
+    private void setEyeUniforms(int eye, Eye e, int x, int y, int width, int height) {
+        int r = 4 * eye;
+        eyeViewports[r] = (float)eyeRects[r + 2] / width;
+        eyeViewports[r + 1] = (2f * (eyeRects[r] - x) + eyeRects[r + 2]) / width - 1f;
+        eyeViewports[r + 2] = (float)eyeRects[r + 3] / height;
+        eyeViewports[r + 3] = (2f * (eyeRects[r + 1] - y) + eyeRects[r + 3]) / height - 1f;
+
+        float[] eyeView = e.getEyeView();
+        Matrix.multiplyMV(lightPosInEyeSpace, 0, eyeView, 0, LIGHT_POS_IN_WORLD_SPACE, 0);
+        System.arraycopy(lightPosInEyeSpace, 0, stereoLightPos, 3 * eye, 3);
+
+        float[] perspective = e.getPerspective(Z_NEAR, Z_FAR);
+        Matrix.multiplyMM(stereoFloorModelView, 16 * eye, eyeView, 0, modelFloor, 0);
+        Matrix.multiplyMM(stereoFloorMvp, 16 * eye, perspective, 0
+                          , stereoFloorModelView, 16 * eye);
+        Matrix.multiplyMM(modelView, 0, eyeView, 0, modelScreen, 0);
+        Matrix.multiplyMM(stereoScreenMvp, 16 * eye, perspective, 0, modelView, 0);
+    }
+
+    private void drawEye(int index, Eye eye) {
+        int r = 4 * index;
+        GLES20.glViewport(eyeRects[r], eyeRects[r + 1], eyeRects[r + 2], eyeRects[r + 3]);
+        GLES20.glScissor(eyeRects[r], eyeRects[r + 1], eyeRects[r + 2], eyeRects[r + 3]);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
         checkGLError();
@@ -334,69 +768,131 @@ public class ViredroidRenderer {
         Matrix.multiplyMM(modelView, 0, eyeView, 0, modelFloor, 0);
         Matrix.multiplyMM(modelViewProjection, 0, perspective, 0,
                           modelView, 0);
-        drawFloor();
+        drawFloor(false);
 
         Matrix.multiplyMM(modelView, 0, eyeView, 0, modelScreen, 0);
         Matrix.multiplyMM(modelViewProjection, 0, perspective, 0, modelView, 0);
-        drawScreen(updates);
+        drawScreen(false);
 
     }
 
-    private void drawScreen(List<Update> updates) {
-        GLES20.glUseProgram(screenProgram);
-
-        for (Update update : updates) {
-            update.draw();
-            Log.d(ViredroidGLActivity.LOGTAG, "updated");
-        }
-
+    private void drawScreen(boolean stereo) {
+        int mvpParam = screenModelViewProjectionParam;
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, screenTexDataHandle);
-        GLES20.glUniform1i(screenTexUnihandle, 0);
+        if (videoMode) {
+            GLES20.glUseProgram(videoProgram);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, videoTexDataHandle);
+            GLES20.glUniform1i(videoTexUnihandle, 0);
+            GLES20.glUniformMatrix4fv(videoTexMatrixParam, 1, false, videoTexMatrix, 0);
+            GLES20.glUniform1i(videoPointTexUnihandle, 1);
+            GLES20.glUniform4fv(videoPointRectParam, 1, pointerRect, 0);
+            GLES20.glUniform4fv(videoPointShapeParam, 1, pointerShape, 0);
+            mvpParam = videoModelViewProjectionParam;
+        } else if (stereo) {
+            GLES20.glUseProgram(stereoScreenProgram);
+            GLES20.glUniform4fv(stereoScreenEyeViewportParam, 2, eyeViewports, 0);
+            bindScreenTextures(stereoScreenTexUnihandle, stereoPointTexUnihandle
+                               , stereoPointRectParam, stereoPointShapeParam
+                               , stereoChromaTexUnihandle, stereoScreenYuvParam);
+        } else {
+            GLES20.glUseProgram(screenProgram);
+            bindScreenTextures(screenTexUnihandle, pointTexUnihandle, pointRectParam
+                               , pointShapeParam, chromaTexUnihandle, screenYuvParam);
+        }
         GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pointerTexDataHandle);
-        GLES20.glUniform1i(pointTexUnihandle, 1);
-
-        GLES20.glVertexAttribPointer(
-            screenPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT
-            , false, 0, screenVertices);
-
-        GLES20.glVertexAttribPointer(
-            screenTexParam, COORDS_PER_TEXTURE
-            , GLES20.GL_FLOAT, false, 0, screenTextures);
-
-        GLES20.glUniformMatrix4fv(
-            screenModelViewProjectionParam, 1
-            , false, modelViewProjection, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pointerShapeTexId);
+
+        if (stereo) {
+            GLES20.glUniformMatrix4fv(
+                stereoScreenMvpParam, 2, false, stereoScreenMvp, 0);
+        } else {
+            GLES20.glUniformMatrix4fv(
+                mvpParam, 1, false, modelViewProjection, 0);
+        }
 
-        GLES20.glDrawElements(
-            GLES20.GL_TRIANGLE_STRIP, screenIndicesSize
-            , GLES20.GL_UNSIGNED_SHORT, screenIndices);
+        if (screenVao != 0) {
+            GLES30.glBindVertexArray(screenVao);
+        } else {
+            bindScreenArrays();
+        }
+        if (stereo) {
+            GLES30.glDrawElementsInstanced(
+                GLES20.GL_TRIANGLE_STRIP, screenIndicesSize
+                , GLES20.GL_UNSIGNED_SHORT, 0, 2);
+        } else {
+            GLES20.glDrawElements(
+                GLES20.GL_TRIANGLE_STRIP, screenIndicesSize
+                , GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+        if (screenVao != 0) {
+            GLES30.glBindVertexArray(0);
+        } else {
+            unbindArrays();
+        }
  
         checkGLError();
     }
 
-    private void drawFloor() {
-        GLES20.glUseProgram(floorProgram);
-
-        GLES20.glUniform3fv(floorLightPosParam, 1, lightPosInEyeSpace, 0);
-        GLES20.glUniform4fv(floorColorUParam, 1, FLOOR_COLOR, 0);
-        GLES20.glUniformMatrix4fv(floorModelParam, 1, false, modelFloor, 0);
-        GLES20.glUniformMatrix4fv(floorModelViewParam, 1, false, modelView, 0);
-        GLES20.glUniformMatrix4fv(floorModelViewProjectionParam, 1, false,
-                                  modelViewProjection, 0);
-        GLES20.glVertexAttribPointer(floorPositionParam, COORDS_PER_VERTEX, GLES20.GL_FLOAT,
-                                     false, 0, floorVertices);
-        GLES20.glVertexAttribPointer(floorNormalParam, 3, GLES20.GL_FLOAT, false, 0,
-                                     floorNormals);
+    // screen texture to unit 0 and chroma one to unit 2 if in use, sets
+    //   the samplers and cursor uniforms of a passthrough program
+    private void bindScreenTextures(int texParam, int pointTexParam, int pointRectParam
+                                    , int pointShapeParam, int chromaTexParam
+                                    , int yuvParam) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, screenTexDataHandle);
+        GLES20.glUniform1i(texParam, 0);
+        GLES20.glUniform1i(pointTexParam, 1);
+        GLES20.glUniform4fv(pointRectParam, 1, pointerRect, 0);
+        GLES20.glUniform4fv(pointShapeParam, 1, pointerShape, 0);
+        GLES20.glUniform1i(chromaTexParam, 2);
+        GLES20.glUniform1i(yuvParam, yuvMode ? 1 : 0);
+        if (yuvMode) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE2);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, chromaTexDataHandle);
+        }
+    }
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+    private void drawFloor(boolean stereo) {
+        if (stereo) {
+            GLES20.glUseProgram(stereoFloorProgram);
+            GLES20.glUniform4fv(stereoFloorEyeViewportParam, 2, eyeViewports, 0);
+            GLES20.glUniform3fv(stereoFloorLightPosParam, 2, stereoLightPos, 0);
+            GLES20.glUniform4fv(stereoFloorColorUParam, 1, FLOOR_COLOR, 0);
+            GLES20.glUniformMatrix4fv(stereoFloorModelParam, 1, false, modelFloor, 0);
+            GLES20.glUniformMatrix4fv(stereoFloorModelViewParam, 2, false
+                                      , stereoFloorModelView, 0);
+            GLES20.glUniformMatrix4fv(stereoFloorMvpParam, 2, false, stereoFloorMvp, 0);
+        } else {
+            GLES20.glUseProgram(floorProgram);
+
+            GLES20.glUniform3fv(floorLightPosParam, 1, lightPosInEyeSpace, 0);
+            GLES20.glUniform4fv(floorColorUParam, 1, FLOOR_COLOR, 0);
+            GLES20.glUniformMatrix4fv(floorModelParam, 1, false, modelFloor, 0);
+            GLES20.glUniformMatrix4fv(floorModelViewParam, 1, false, modelView, 0);
+            GLES20.glUniformMatrix4fv(floorModelViewProjectionParam, 1, false,
+                                      modelViewProjection, 0);
+        }
+        if (floorVao != 0) {
+            GLES30.glBindVertexArray(floorVao);
+        } else {
+            bindFloorArrays();
+        }
+        if (stereo) {
+            GLES30.glDrawArraysInstanced(GLES20.GL_TRIANGLES, 0, 6, 2);
+        } else {
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+        }
+        if (floorVao != 0) {
+            GLES30.glBindVertexArray(0);
+        } else {
+            unbindArrays();
+        }
 
         checkGLError();
     }
     
-    private int loadGLShader(int type, int resId) {
-        String code = activity.readRawTextFile(resId);
+    // preamble sets the shader up for drawing one eye or both at once
+    private int loadGLShader(int type, int preambleResId, int resId) {
+        String code = activity.readRawTextFile(preambleResId) + activity.readRawTextFile(resId);
         int shader = GLES20.glCreateShader(type);
         GLES20.glShaderSource(shader, code);
         GLES20.glCompileShader(shader);
@@ -420,10 +916,186 @@ public class ViredroidRenderer {
         Matrix.translateM(modelFloor, 0, 0, -FLOOR_DEPTH, 0); // Floor appears below user.
     }
 
+    /**
+     * Where the user looks on the screen, as screen texture coordinates put
+     * to uv. False if the gaze misses the screen. GL thread only.
+     */
+    public boolean getGazePoint(HeadTransform headTransform, float[] uv) {
+        // ray from the eyes along the gaze, in screen model space
+        Arrays.fill(gazeRay, 0f);
+        gazeRay[3] = 1f;
+        headTransform.getForwardVector(gazeRay, 4);
+        Matrix.invertM(screenInverse, 0, modelScreen, 0);
+        Matrix.multiplyMV(gazeRayModel, 0, screenInverse, 0, gazeRay, 0);
+        Matrix.multiplyMV(gazeRayModel, 4, screenInverse, 0, gazeRay, 4);
+        float ox = gazeRayModel[0];
+        float oy = gazeRayModel[1];
+        float oz = gazeRayModel[2];
+        float dx = gazeRayModel[4];
+        float dy = gazeRayModel[5];
+        float dz = gazeRayModel[6];
+        float dd = dx * dx + dz * dz;
+        if (dd == 0f) {
+            return false; // straight up or down
+        }
+        // screen is vertical, so look for the slice the ray crosses from
+        //   above: there the side of the ray the slices lie on changes
+        float prevSide = 0f;
+        for (int j = 0; j < SCREEN_SLICES; j += 1) {
+            float side = (sliceX[j] - ox) * dz - (sliceZ[j] - oz) * dx;
+            if (j > 0 && (prevSide < 0f) != (side < 0f)) {
+                float s = prevSide / (prevSide - side);
+                float hx = sliceX[j - 1] + s * (sliceX[j] - sliceX[j - 1]) - ox;
+                float hz = sliceZ[j - 1] + s * (sliceZ[j] - sliceZ[j - 1]) - oz;
+                float along = (hx * dx + hz * dz) / dd;
+                if (along > 0f) { // not behind the user
+                    float v = (SCREEN_HEIGHT - oy - along * dy) * .5f / SCREEN_HEIGHT;
+                    if (v < 0f || v > 1f) {
+                        return false;
+                    }
+                    float u = sliceU[j - 1] + s * (sliceU[j] - sliceU[j - 1]);
+                    uv[0] = Math.max(0f, Math.min(1f, u));
+                    uv[1] = v;
+                    return true;
+                }
+            }
+            prevSide = side;
+        }
+        return false;
+    }
+
+    public boolean isGles3() {
+        return gles3;
+    }
+
+    /**
+     * Whether to draw both eyes in one pass where possible. Takes effect
+     * on the next surface.
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
+    /**
+     * Whether to lower render resolution when frames take too long, and
+     * the refresh rate to keep. Take effect on the next surface.
+     */
+    public void setDynamicResolution(boolean dynamicResolution, float refreshRate) {
+        this.dynamicResolution = dynamicResolution;
+        this.refreshRate = refreshRate;
+    }
+
+    public void setUsePbo(boolean usePbo) {
+        this.usePbo = usePbo;
+    }
+
+    /**
+     * Pool for raw image data on its way to textures. Backed by pixel
+     * buffer objects when enabled and GLES 3.0 is there, plain direct
+     * buffers otherwise.
+     */
+    public BufferPool newUploadPool(int size, int bufferSize) {
+        if (usePbo && gles3) {
+            Log.i(ViredroidGLActivity.LOGTAG, "Uploading through pixel buffer objects");
+            PboPool pool = new PboPool(size, bufferSize);
+            pboPool = pool;
+            return pool;
+        }
+        return new BufferPool(size, bufferSize);
+    }
+
+    public void onNewFrame() {
+        frameCount++;
+        PboPool pool = pboPool;
+        if (pool != null) {
+            pool.onNewFrame();
+        }
+        if (videoFrameAvailable) {
+            videoFrameAvailable = false;
+            videoTexture.updateTexImage();
+            videoTexture.getTransformMatrix(videoTexMatrix);
+        }
+    }
+
+    public SurfaceTexture getVideoSurfaceTexture() {
+        return videoTexture;
+    }
+
+    /**
+     * Switches screen between the texture fed by updates and the one fed
+     * by the video decoder.
+     */
+    public void setVideoMode(boolean videoMode) {
+        this.videoMode = videoMode;
+    }
+
+    /**
+     * Switches screen texture between rgb and yuv, in the latter it holds
+     * luma while chroma texture holds u and v.
+     */
+    public void setYuvMode(boolean yuvMode) {
+        this.yuvMode = yuvMode;
+    }
+
+    /**
+     * Puts cursor of width x height pixels at x, y of the screen. GL
+     * thread only.
+     */
+    public void setPointer(int x, int y, int width, int height
+                           , int screenWidth, int screenHeight) {
+        if (width <= 0 || height <= 0 || screenWidth <= 0 || screenHeight <= 0) {
+            hidePointer();
+            return;
+        }
+        pointerRect[0] = (float)x / screenWidth;
+        pointerRect[1] = (float)y / screenHeight;
+        pointerRect[2] = (float)screenWidth / width;
+        pointerRect[3] = (float)screenHeight / height;
+    }
+
+    /**
+     * Takes cursor from the texId texture, from the part of it at u, v of
+     * du x dv texture coordinates. GL thread only.
+     */
+    public void setPointerShape(int texId, float u, float v, float du, float dv) {
+        pointerShapeTexId = texId;
+        pointerShape[0] = u;
+        pointerShape[1] = v;
+        pointerShape[2] = du;
+        pointerShape[3] = dv;
+    }
+
+    // moves cursor well off the screen
+    private void hidePointer() {
+        pointerRect[0] = -2f;
+        pointerRect[1] = -2f;
+        pointerRect[2] = 1f;
+        pointerRect[3] = 1f;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Stretches scaled images over the screen, null without GLES 3.0.
+     */
+    public Upscaler getUpscaler() {
+        return upscaler;
+    }
+
+    public int getChromaTexDataHandle() {
+        return chromaTexDataHandle;
+    }
+
     public int getScreenTexDataHandle() {
         return screenTexDataHandle;
     }
 
+    public int getCursorAtlasTexDataHandle() {
+        return cursorAtlasTexDataHandle;
+    }
+
     public int getPointerTexDataHandle() {
         return pointerTexDataHandle;
     }
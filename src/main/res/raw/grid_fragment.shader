@@ -3,12 +3,13 @@ varying vec4 v_Color;
 varying vec3 v_Grid;
 
 void main() {
+    CLIP_TO_EYE();
     float depth = gl_FragCoord.z / gl_FragCoord.w; // Calculate world-space distance.
 
     if ((mod(abs(v_Grid.x), 10.0) < 0.1) || (mod(abs(v_Grid.z), 10.0) < 0.1)) {
-        gl_FragColor = max(0.0, (90.0-depth) / 90.0) * vec4(1.0, 1.0, 1.0, 1.0)
+        FRAG_COLOR = max(0.0, (90.0-depth) / 90.0) * vec4(1.0, 1.0, 1.0, 1.0)
                 + min(1.0, depth / 90.0) * v_Color;
     } else {
-        gl_FragColor = v_Color;
+        FRAG_COLOR = v_Color;
     }
 }
@@ -1,7 +1,7 @@
 uniform mat4 u_Model;
-uniform mat4 u_MVP;
-uniform mat4 u_MVMatrix;
-uniform vec3 u_LightPos;
+EYE_UNIFORM(mat4, u_MVP);
+EYE_UNIFORM(mat4, u_MVMatrix);
+EYE_UNIFORM(vec3, u_LightPos);
 uniform vec4 u_Color;
 
 attribute vec4 a_Position;
@@ -14,14 +14,14 @@ varying vec3 v_Grid;
 void main() {
    v_Grid = vec3(u_Model * a_Position);
 
-   vec3 modelViewVertex = vec3(u_MVMatrix * a_Position);
-   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
+   vec3 modelViewVertex = vec3(EYE(u_MVMatrix) * a_Position);
+   vec3 modelViewNormal = vec3(EYE(u_MVMatrix) * vec4(a_Normal, 0.0));
 
-   float distance = length(u_LightPos - modelViewVertex);
-   vec3 lightVector = normalize(u_LightPos - modelViewVertex);
+   float distance = length(EYE(u_LightPos) - modelViewVertex);
+   vec3 lightVector = normalize(EYE(u_LightPos) - modelViewVertex);
    float diffuse = max(dot(modelViewNormal, lightVector), 0.5);
 
    diffuse = diffuse * (1.0 / (1.0 + (0.00001 * distance * distance)));
    v_Color = u_Color * diffuse;
-   gl_Position = u_MVP * a_Position;
+   gl_Position = TO_EYE(EYE(u_MVP) * a_Position);
 }
@@ -0,0 +1,5 @@
+// prepended to fragment shaders drawing one eye at a time
+
+#define FRAG_COLOR gl_FragColor
+#define CLIP_TO_EYE()
+
@@ -0,0 +1,6 @@
+// prepended to vertex shaders drawing one eye at a time
+
+#define EYE_UNIFORM(type, name) uniform type name
+#define EYE(name) name
+#define TO_EYE(clip) (clip)
+
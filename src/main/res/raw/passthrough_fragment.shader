@@ -1,10 +1,35 @@
 precision mediump float;
 uniform sampler2D u_TexScreen;
+// cursor image, u_PointerRect has its corner in screen texture
+//   coordinates and how many times smaller than the screen it is
 uniform sampler2D u_TexPointer;
+uniform vec4 u_PointerRect;
+// part of u_TexPointer the cursor takes: corner and size
+uniform vec4 u_PointerShape;
+// in yuv mode screen holds luma, chroma holds u and v as luminance, alpha
+uniform sampler2D u_TexChroma;
+uniform bool u_Yuv;
 varying vec2 v_TexCoord;
 
+// BT.601 limited range, columns are y, u and v
+const mat3 YUV_TO_RGB = mat3(1.164, 1.164, 1.164,
+                             0.0, -0.392, 2.017,
+                             1.596, -0.813, 0.0);
+
 void main() {
-     vec4 scr = texture2D(u_TexScreen, v_TexCoord);
-     vec4 point = texture2D(u_TexPointer, v_TexCoord);
-     gl_FragColor = point*point.a + scr*(1.0 - point.a);
+     CLIP_TO_EYE();
+     vec4 scr;
+     if (u_Yuv) {
+         vec3 yuv = vec3(texture2D(u_TexScreen, v_TexCoord).r - 0.0625,
+                         texture2D(u_TexChroma, v_TexCoord).ra - 0.5);
+         scr = vec4(YUV_TO_RGB * yuv, 1.0);
+     } else {
+         scr = texture2D(u_TexScreen, v_TexCoord);
+     }
+     vec2 pointCoord = (v_TexCoord - u_PointerRect.xy) * u_PointerRect.zw;
+     if (pointCoord == clamp(pointCoord, 0.0, 1.0)) {
+         vec4 point = texture2D(u_TexPointer, u_PointerShape.xy + pointCoord * u_PointerShape.zw);
+         scr = point*point.a + scr*(1.0 - point.a);
+     }
+     FRAG_COLOR = scr;
 }
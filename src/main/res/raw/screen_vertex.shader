@@ -1,4 +1,4 @@
-uniform mat4 u_MVP;
+EYE_UNIFORM(mat4, u_MVP);
 
 attribute vec4 a_Position;
 attribute vec2 a_TexCoord;
@@ -7,5 +7,5 @@ varying vec2 v_TexCoord;
 
 void main() {
    v_TexCoord = a_TexCoord;
-   gl_Position = u_MVP * a_Position;
+   gl_Position = TO_EYE(EYE(u_MVP) * a_Position);
 }
@@ -0,0 +1,13 @@
+#version 300 es
+// prepended to fragment shaders drawing both eyes at once, see
+//   stereo_vertex
+precision mediump float;
+
+#define varying in
+#define texture2D texture
+
+in vec3 v_EyeClip;
+out vec4 FRAG_COLOR;
+
+#define CLIP_TO_EYE() if (any(greaterThan(abs(v_EyeClip.xy), vec2(v_EyeClip.z)))) discard
+
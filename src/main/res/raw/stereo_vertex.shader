@@ -0,0 +1,24 @@
+#version 300 es
+// prepended to vertex shaders drawing both eyes in one instanced draw,
+//   instance 0 is the left eye and 1 the right one
+
+#define attribute in
+#define varying out
+
+#define EYE_UNIFORM(type, name) uniform type name[2]
+#define EYE(name) name[gl_InstanceID]
+#define TO_EYE(clip) toEye(clip)
+
+// scale and offset of x, then of y, squeezing eye's clip space into its
+//   part of the viewport
+uniform vec4 u_EyeViewport[2];
+// eye's own clip x, y and w, to cut off what spills into the other eye
+out vec3 v_EyeClip;
+
+vec4 toEye(vec4 clip) {
+    vec4 eye = u_EyeViewport[gl_InstanceID];
+    v_EyeClip = vec3(clip.xy, clip.w);
+    return vec4(clip.x * eye.x + clip.w * eye.y, clip.y * eye.z + clip.w * eye.w
+                , clip.zw);
+}
+
@@ -0,0 +1,21 @@
+#extension GL_OES_EGL_image_external : require
+precision mediump float;
+uniform samplerExternalOES u_TexScreen;
+uniform sampler2D u_TexPointer;
+uniform vec4 u_PointerRect;
+// part of u_TexPointer the cursor takes: corner and size
+uniform vec4 u_PointerShape;
+uniform mat4 u_TexMatrix;
+varying vec2 v_TexCoord;
+
+void main() {
+     // texture rows go top down, SurfaceTexture frames bottom up
+     vec2 scrCoord = (u_TexMatrix * vec4(v_TexCoord.x, 1.0 - v_TexCoord.y, 0.0, 1.0)).xy;
+     vec4 scr = texture2D(u_TexScreen, scrCoord);
+     vec2 pointCoord = (v_TexCoord - u_PointerRect.xy) * u_PointerRect.zw;
+     if (pointCoord == clamp(pointCoord, 0.0, 1.0)) {
+         vec4 point = texture2D(u_TexPointer, u_PointerShape.xy + pointCoord * u_PointerShape.zw);
+         scr = point*point.a + scr*(1.0 - point.a);
+     }
+     gl_FragColor = scr;
+}